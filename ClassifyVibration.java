@@ -9,8 +9,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import com.fazecast.jSerialComm.SerialPort;
-
 import processing.core.PApplet;
 import processing.sound.AudioIn;
 import processing.sound.FFT;
@@ -33,7 +31,9 @@ public class ClassifyVibration extends PApplet {
 	String[] classNames = {"Neutral", "Scratch", "Tap"};
 	int classIndex = 0;
 	int dataCount = 0;
-	SerialPort sp;
+	
+	/* results go to the board on the writer thread, so draw() and key handling never wait on COM8 */
+	ActuatorQueue actuator;
 
 	MLClassifier classifier;
 	String fileName = "test.csv";
@@ -91,14 +91,8 @@ public class ClassifyVibration extends PApplet {
 		/* list all audio devices */
 		Sound.list();
 		Sound s = new Sound(this);
-		sp = SerialPort.getCommPort("COM8");
-        sp.setComPortParameters(9600, 8, 1, 0);
-        sp.setComPortTimeouts(SerialPort.TIMEOUT_WRITE_BLOCKING, 0, 0);
-        //-------------------------------------------------------------
-        if(!sp.openPort()) {
-            System.out.println("\nCOM port NOT available\n");
-        }
-        //-------------------------------------------------------------
+		actuator = new ActuatorQueue(new SerialActuator("COM8", 9600), 16);
+		actuator.start();
         
 		  
 		/* select microphone device */
@@ -258,38 +252,10 @@ public class ClassifyVibration extends PApplet {
 				
 				results.add(temp);	//add classification result to results array
 				if (temp=="Scratch") {
-					Integer blinks = 0;
-		            
-		            try {
-						Thread.sleep(800);
-					} catch (InterruptedException e) {
-						// TODO Auto-generated catch block
-						e.printStackTrace();
-					}
-		            try {
-						sp.getOutputStream().write(blinks.byteValue());
-						System.out.println("sent0");
-					} catch (IOException e) {
-						// TODO Auto-generated catch block
-						e.printStackTrace();
-					}
+					actuator.send(0);	// 0 blinks
 				}
 				else if (temp == "Tap") {
-					Integer blinks = 1;
-		            
-		            try {
-						Thread.sleep(800);
-					} catch (InterruptedException e) {
-						// TODO Auto-generated catch block
-						e.printStackTrace();
-					}
-		            try {
-						sp.getOutputStream().write(blinks.byteValue());
-						System.out.println("sent1");
-					} catch (IOException e) {
-						// TODO Auto-generated catch block
-						e.printStackTrace();
-					}
+					actuator.send(1);	// 1 blink
 				}
 				int results_size = results.size();
 				for (int i = 0; i < results_size; i++) {	//print results array each time
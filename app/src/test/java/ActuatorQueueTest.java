@@ -0,0 +1,108 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/* The queue in front of the board, driven through a LoopbackActuator */
+
+public class ActuatorQueueTest {
+
+	@Test
+	public void duplicatesCoalesce() throws Exception {
+		LoopbackActuator actuator = new LoopbackActuator();
+		ActuatorQueue queue = new ActuatorQueue(actuator, 4);
+		queue.minIntervalMillis = 0;
+
+		assertTrue(queue.send(1));
+		assertFalse(queue.send(1));
+		assertFalse(queue.send(1));
+		assertTrue(queue.send(0));
+		assertEquals(2, queue.pending());
+		assertEquals(2, queue.coalesced.get());
+
+		queue.start();
+		List<byte[]> sent = awaitSent(actuator, 2);
+		queue.stop();
+		assertEquals(2, sent.size());
+		assertArrayEquals(new byte[] {1}, sent.get(0));
+		assertArrayEquals(new byte[] {0}, sent.get(1));
+	}
+
+	@Test
+	public void fullQueueDropsOldest() throws Exception {
+		LoopbackActuator actuator = new LoopbackActuator();
+		ActuatorQueue queue = new ActuatorQueue(actuator, 3);
+		queue.minIntervalMillis = 0;
+
+		for (int i = 1; i <= 5; i++) {
+			queue.send(i);
+		}
+		assertEquals(3, queue.pending());
+		assertEquals(2, queue.dropped.get());
+
+		queue.start();
+		List<byte[]> sent = awaitSent(actuator, 3);
+		queue.stop();
+		assertEquals(3, sent.size());
+		for (int i = 0; i < 3; i++) {
+			assertArrayEquals(new byte[] {(byte) (i + 3)}, sent.get(i));
+		}
+	}
+
+	@Test
+	public void reconnectsWithoutBlockingSend() throws Exception {
+		LoopbackActuator actuator = new LoopbackActuator();
+		actuator.writeMillis = 50;
+		actuator.failWrites = 1;
+		actuator.failOpens = 2;
+		ActuatorQueue queue = new ActuatorQueue(actuator, 4);
+		queue.minIntervalMillis = 0;
+		queue.reconnectMillis = 40;
+
+		/* open fails twice: 40 ms then 80 ms of back-off before the first write */
+		long start = System.nanoTime();
+		queue.start();
+		queue.send(1);
+
+		/* the writer is asleep or stuck in a slow write all along; send() must not wait for it */
+		long slowest = 0;
+		for (int i = 0; i < 200; i++) {
+			long t = System.nanoTime();
+			queue.send(i % 2);
+			slowest = Math.max(slowest, System.nanoTime() - t);
+		}
+		assertTrue("send() took " + slowest / 1000 + " us", slowest < 20000000L);
+
+		long end = System.currentTimeMillis() + 5000;
+		while (actuator.sent().isEmpty() && System.currentTimeMillis() < end) {
+			Thread.sleep(1);
+		}
+		long elapsed = (System.nanoTime() - start) / 1000000;
+		while (queue.pending() > 0 && System.currentTimeMillis() < end) {
+			Thread.sleep(5);
+		}
+		List<byte[]> sent = awaitSent(actuator, 1);
+		queue.stop();
+
+		/* two failed opens, the open that worked, and the reopen after the failed write */
+		assertTrue("first write after " + elapsed + " ms", elapsed >= 120);
+		assertEquals(4, actuator.opens);
+		assertEquals(3, queue.failures.get());
+		/* whatever was dropped or coalesced on the way, the newest decision got through */
+		assertArrayEquals(new byte[] {1}, sent.get(sent.size() - 1));
+	}
+
+	private static List<byte[]> awaitSent(LoopbackActuator actuator, int n) throws InterruptedException {
+		long end = System.currentTimeMillis() + 5000;
+		while (actuator.sent().size() < n && System.currentTimeMillis() < end) {
+			Thread.sleep(5);
+		}
+		/* give a writer that would send too much the chance to */
+		Thread.sleep(100);
+		return actuator.sent();
+	}
+}
@@ -0,0 +1,27 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/* The compiled classify path allocates nothing once warmed up, by the JVM's own per-thread counters */
+
+public class AllocationTest {
+
+	static final String[] LABELS = {"Neutral", "Scratch", "Tap"};
+
+	@Test
+	public void compiledClassifyAllocatesNothing() {
+		MLClassifier classifier = TestData.trained(LABELS);
+		assertNotNull("a linear SMO should compile", classifier.compiled);
+
+		float[] frame = TestData.frame(LABELS, 1, new Random(2)).measurements;
+		/* a first round lets the JIT finish, its one-off allocations during compilation are not per call */
+		BatchEvaluator.allocationPerClassify(classifier, frame, 100000);
+		double bytes = BatchEvaluator.allocationPerClassify(classifier, frame, 100000);
+		assumeTrue("the JVM does not count allocation per thread", bytes >= 0);
+		assertEquals("bytes allocated per classify()", 0.0, bytes, 0.0);
+	}
+}
@@ -0,0 +1,83 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/* Writing a store must either produce a file open() reads back in full, or refuse */
+
+public class FeatureStoreTest {
+
+	@Test
+	public void longNamesRoundTrip() throws Exception {
+		/* names that overflow the 64 KB write buffer */
+		String[] names = new String[8];
+		Map<String, List<DataInstance>> data = new LinkedHashMap<>();
+		for (int c = 0; c < names.length; c++) {
+			char[] name = new char[20000];
+			Arrays.fill(name, (char) ('a' + c));
+			names[c] = new String(name);
+			data.put(names[c], rows(names[c], 3, 5));
+		}
+
+		File file = temp();
+		FeatureStore.write(file, names, data);
+		FeatureStore store = FeatureStore.open(file);
+		assertEquals(24, store.rows());
+		assertEquals(5, store.bins());
+		assertEquals(names[7], store.labelName(23));
+		assertEquals(2f, store.value(23, 0), 0f);
+	}
+
+	@Test
+	public void raggedRowsAreRejected() throws Exception {
+		Map<String, List<DataInstance>> data = new LinkedHashMap<>();
+		data.put("Tap", rows("Tap", 3, 5));
+		data.get("Tap").addAll(rows("Tap", 1, 4));
+		expectRefused(new String[] {"Tap"}, data, "row 3 of Tap has 4 bins");
+	}
+
+	@Test
+	public void unknownLabelsAreRejected() throws Exception {
+		Map<String, List<DataInstance>> data = new LinkedHashMap<>();
+		data.put("Tap", rows("Tap", 3, 5));
+		data.put("Knock", rows("Knock", 3, 5));
+		expectRefused(new String[] {"Tap"}, data, "label Knock");
+	}
+
+	private static void expectRefused(String[] names, Map<String, List<DataInstance>> data, String message) throws Exception {
+		try {
+			FeatureStore.write(temp(), names, data);
+			fail("wrote a store open() would misread");
+		} catch (IOException e) {
+			if (!e.getMessage().startsWith(message)) {
+				throw e;
+			}
+		}
+	}
+
+	private static List<DataInstance> rows(String label, int n, int bins) {
+		List<DataInstance> res = new ArrayList<>();
+		for (int r = 0; r < n; r++) {
+			DataInstance d = new DataInstance();
+			d.label = label;
+			d.measurements = new float[bins];
+			Arrays.fill(d.measurements, r);
+			res.add(d);
+		}
+		return res;
+	}
+
+	private static File temp() throws IOException {
+		File file = File.createTempFile("features", ".vbf");
+		file.deleteOnExit();
+		return file;
+	}
+}
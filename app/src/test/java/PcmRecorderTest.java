@@ -0,0 +1,56 @@
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+/* Recordings made by 'r', and read back by PcmReplay */
+
+public class PcmRecorderTest {
+
+	@Test
+	public void writeAfterCloseIsDropped() throws Exception {
+		File file = File.createTempFile("recording", ".wav");
+		file.deleteOnExit();
+
+		PcmRecorder recorder = new PcmRecorder(file, 44100);
+		byte[] block = new byte[512];
+		recorder.write(block, 0, block.length);
+		recorder.close();
+
+		/* the file is truncated under the mapped region here; this must neither fault nor grow it */
+		recorder.write(block, 0, block.length);
+		recorder.close();
+
+		assertEquals(256, recorder.samplesWritten());
+		assertEquals(PcmRecorder.HEADER + block.length, file.length());
+	}
+
+	/* a valid WAV may put its "fmt " chunk after "data" */
+	@Test
+	public void replayFindsFormatAfterData() throws Exception {
+		File file = File.createTempFile("recording", ".wav");
+		file.deleteOnExit();
+
+		ByteBuffer b = ByteBuffer.allocate(12 + 8 + 8 + 8 + 16).order(ByteOrder.LITTLE_ENDIAN);
+		b.put("RIFF".getBytes()).putInt(b.capacity() - 8).put("WAVE".getBytes());
+		b.put("data".getBytes()).putInt(8);
+		b.putShort((short) 0).putShort((short) 16384).putShort((short) -16384).putShort((short) 0);
+		b.put("fmt ".getBytes()).putInt(16).putShort((short) 1).putShort((short) 1);
+		b.putInt(8000).putInt(16000).putShort((short) 2).putShort((short) 16);
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.write(b.array());
+		}
+
+		PcmReplay replay = new PcmReplay(file);
+		assertEquals(8000, replay.sampleRate());
+		assertEquals(4, replay.length());
+		float[] samples = new float[4];
+		assertEquals(4, replay.read(0, samples));
+		assertEquals(0.5f, samples[1], 0f);
+		assertEquals(-0.5f, samples[2], 0f);
+	}
+}
@@ -0,0 +1,47 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/* Synthetic spectra for the tests, so they need neither a microphone nor the CSV files
+ *
+ * Class c has its energy in a band of bins of its own, plus noise drawn with a fixed seed,
+ * which any of the classifiers separates easily.
+ */
+
+public class TestData {
+
+	static final int BINS = 64;
+
+	public static Map<String, List<DataInstance>> training(String[] labels, int perClass, long seed) {
+		Random random = new Random(seed);
+		Map<String, List<DataInstance>> res = new LinkedHashMap<>();
+		for (int c = 0; c < labels.length; c++) {
+			List<DataInstance> v = new ArrayList<>();
+			for (int i = 0; i < perClass; i++) {
+				v.add(frame(labels, c, random));
+			}
+			res.put(labels[c], v);
+		}
+		return res;
+	}
+
+	public static DataInstance frame(String[] labels, int c, Random random) {
+		DataInstance res = new DataInstance();
+		res.label = labels[c];
+		res.measurements = new float[BINS];
+		int band = BINS / labels.length;
+		for (int k = 0; k < BINS; k++) {
+			res.measurements[k] = 0.1f * random.nextFloat() + (k / band == c ? 1 + random.nextFloat() : 0);
+		}
+		return res;
+	}
+
+	public static MLClassifier trained(String[] labels) {
+		MLClassifier res = new MLClassifier();
+		res.verbose = false;
+		res.train(training(labels, 30, 1), null);
+		return res;
+	}
+}
@@ -0,0 +1,53 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/* Training straight from a store's matrices gives the model that training on copied rows does */
+
+public class TrainingStoreTest {
+
+	static final String[] LABELS = {"Neutral", "Scratch", "Tap"};
+
+	@Test
+	public void trainsFromSnapshotInPlace() {
+		TrainingStore store = new TrainingStore(LABELS, 100);
+		store.addAll(TestData.training(LABELS, 30, 1));
+		Map<String, List<DataInstance>> snapshot = store.snapshot();
+
+		Map<String, List<DataInstance>> copied = new LinkedHashMap<>();
+		for (Map.Entry<String, List<DataInstance>> e : snapshot.entrySet()) {
+			copied.put(e.getKey(), new ArrayList<>(e.getValue()));
+		}
+
+		MLClassifier fromStore = new MLClassifier();
+		fromStore.verbose = false;
+		fromStore.train(snapshot, null);
+		MLClassifier fromCopies = new MLClassifier();
+		fromCopies.verbose = false;
+		fromCopies.train(copied, null);
+
+		Random random = new Random(4);
+		for (int i = 0; i < 60; i++) {
+			float[] frame = TestData.frame(LABELS, i % LABELS.length, random).measurements;
+			assertEquals(fromCopies.classify(frame), fromStore.classify(frame));
+		}
+	}
+
+	@Test
+	public void snapshotRowsAreNotCached() {
+		TrainingStore store = new TrainingStore(LABELS, 100);
+		store.addAll(TestData.training(LABELS, 5, 1));
+		List<DataInstance> rows = store.snapshot().get("Tap");
+
+		assertNotSame(rows.get(0), rows.get(0));
+		assertEquals("Tap", rows.get(0).label);
+		assertEquals(5, rows.size());
+	}
+}
@@ -0,0 +1,64 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import processing.sound.FFT;
+
+/* Decisions fall back to the background class, or to none when the model has no such class */
+
+public class VoteAggregatorTest {
+
+	@Test
+	public void fallsBackToBackground() {
+		VoteAggregator votes = new VoteAggregator(3, 10, 0);
+		for (int i = 0; i < 10; i++) {
+			assertEquals(1, votes.add(1, 1));
+		}
+		/* class 1 drops below the exit share with neither 0 nor 2 reaching enter */
+		for (int i = 0; i < 7; i++) {
+			votes.add(i % 2 == 0 ? 0 : 2, 1);
+		}
+		assertEquals(0, votes.decision());
+	}
+
+	@Test
+	public void fallsBackToNoDecisionWithoutBackground() {
+		VoteAggregator votes = new VoteAggregator(3, 10, -1);
+		assertEquals(-1, votes.decision());
+		for (int i = 0; i < 10; i++) {
+			votes.add(0, 1);
+		}
+		for (int i = 0; i < 7; i++) {
+			votes.add(i % 2 == 0 ? 1 : 2, 1);
+		}
+		assertEquals(-1, votes.decision());
+	}
+
+	/* used to index classNames with -1 and stop the classification thread for good */
+	@Test
+	public void pipelineWithoutNeutralClass() {
+		String[] labels = {"Scratch", "Tap", "Knock"};
+		MLClassifier model = TestData.trained(labels);
+		AnalysisPipeline pipeline = new AnalysisPipeline((FFT) null, TestData.BINS, 1000000,
+				new AtomicReference<>(model), null);
+
+		Random random = new Random(3);
+		for (int i = 0; i < 32; i++) {
+			pipeline.process(TestData.frame(labels, 0, random).measurements);
+		}
+		assertEquals("Scratch", pipeline.latestDecision);
+
+		for (int i = 0; i < 24; i++) {
+			pipeline.process(TestData.frame(labels, 1 + i % 2, random).measurements);
+		}
+		assertEquals(pipeline.backgroundLabel, pipeline.latestDecision);
+
+		for (int i = 0; i < 32; i++) {
+			pipeline.process(TestData.frame(labels, 1, random).measurements);
+		}
+		assertEquals("Tap", pipeline.latestDecision);
+	}
+}
@@ -0,0 +1,119 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import vibration.bench.Fixtures;
+
+/* The default-package side of the benchmarks, see vibration.bench.Fixtures */
+
+public class BenchFixtures implements Fixtures {
+
+	Map<String, List<DataInstance>> trainingData;
+	List<DataInstance> trainingList = new ArrayList<>();
+	List<DataInstance> testData = new ArrayList<>();
+	MLClassifier classifier;
+	int next = 0;
+
+	Map<String, List<DataInstance>> trainingSubset;
+	ClassifyVibration demo;
+	VoteAggregator aggregator;
+	int[] voteClasses;
+	float[] voteConfidences;
+	int[] trialVotes;
+
+	public void load(String trainFileName, String testFileName) throws Exception {
+		trainingData = CsvLoader.load(trainFileName);
+		for (List<DataInstance> v : trainingData.values()) {
+			trainingList.addAll(v);
+		}
+		for (List<DataInstance> v : CsvLoader.load(testFileName).values()) {
+			testData.addAll(v);
+		}
+
+		classifier = new MLClassifier();
+		classifier.train(trainingData);
+	}
+
+	private DataInstance nextFrame() {
+		DataInstance data = testData.get(next);
+		next = next + 1 == testData.size() ? 0 : next + 1;
+		return data;
+	}
+
+	public Object calcFeatures() {
+		return classifier.featureCalc.calcFeatures(nextFrame());
+	}
+
+	public Object calcFeaturesBatch() {
+		return classifier.featureCalc.calcFeatures(testData);
+	}
+
+	public String classify() {
+		return classifier.classify(nextFrame().measurements);
+	}
+
+	public String classifyWeka() {
+		return classifier.classifyWeka(nextFrame().measurements);
+	}
+
+	public void prepareTraining(int rows) {
+		trainingSubset = new LinkedHashMap<>();
+		for (String label : trainingData.keySet()) {
+			trainingSubset.put(label, new ArrayList<>());
+		}
+		for (int i = 0; i < rows; i++) {
+			DataInstance data = trainingList.get(i % trainingList.size());
+			trainingSubset.get(data.label).add(data);
+		}
+	}
+
+	public Object train() {
+		MLClassifier res = new MLClassifier();
+		res.train(trainingSubset);
+		return res;
+	}
+
+	public long saveCSV() {
+		long chars = 0;
+		for (DataInstance data : trainingList) {
+			chars += data.toCSVRow().length();
+		}
+		return chars;
+	}
+
+	public long loadCSV(String fileName) throws Exception {
+		CsvLoader loader = new CsvLoader();
+		loader.stream(fileName, (values, length, label) -> { });
+		return loader.rowsRead();
+	}
+
+	public void prepareVotes(int window) {
+		demo = new ClassifyVibration();
+		aggregator = new VoteAggregator(demo.classNames.length, window, 0);
+		aggregator.setWeighted(true);
+
+		Random random = new Random(42);
+		voteClasses = new int[1024];
+		voteConfidences = new float[voteClasses.length];
+		for (int i = 0; i < voteClasses.length; i++) {
+			voteClasses[i] = random.nextInt(demo.classNames.length);
+			voteConfidences[i] = random.nextFloat();
+		}
+		trialVotes = new int[demo.classNames.length];
+		for (int i = 0; i < window; i++) {
+			trialVotes[voteClasses[i % voteClasses.length]]++;
+		}
+	}
+
+	public int vote() {
+		int i = next;
+		next = next + 1 == voteClasses.length ? 0 : next + 1;
+		return aggregator.add(voteClasses[i], voteConfidences[i]);
+	}
+
+	public String findMode() {
+		return demo.findMode(trialVotes);
+	}
+}
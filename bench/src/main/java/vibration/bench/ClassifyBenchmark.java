@@ -0,0 +1,54 @@
+package vibration.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/* Per-frame cost of the classify hot path, cycling through Robust_Test_Set.csv */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ClassifyBenchmark {
+
+	Fixtures fixtures;
+
+	@Setup
+	public void setup() throws Exception {
+		fixtures = Fixtures.create();
+		fixtures.load(Fixtures.dataFile("test.csv"), Fixtures.dataFile("Robust_Test_Set.csv"));
+	}
+
+	@Benchmark
+	public Object calcFeatures() {
+		return fixtures.calcFeatures();
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public Object calcFeaturesBatch() {
+		return fixtures.calcFeaturesBatch();
+	}
+
+	@Benchmark
+	public String classify() {
+		return fixtures.classify();
+	}
+
+	@Benchmark
+	public String classifyWeka() {
+		return fixtures.classifyWeka();
+	}
+}
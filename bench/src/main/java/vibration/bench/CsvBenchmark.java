@@ -0,0 +1,58 @@
+package vibration.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/* Saving the training set with DataInstance.toCSVRow and loading the fixture files */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CsvBenchmark {
+
+	Fixtures fixtures;
+
+	/* only the load benchmark depends on the file */
+	@State(Scope.Thread)
+	public static class Input {
+		@Param({"test.csv", "Robust_Test_Set.csv"})
+		String file;
+
+		String path;
+
+		@Setup
+		public void setup() {
+			path = Fixtures.dataFile(file);
+		}
+	}
+
+	@Setup
+	public void setup() throws Exception {
+		fixtures = Fixtures.create();
+		fixtures.load(Fixtures.dataFile("test.csv"), Fixtures.dataFile("Robust_Test_Set.csv"));
+	}
+
+	@Benchmark
+	public long save() {
+		return fixtures.saveCSV();
+	}
+
+	@Benchmark
+	public long load(Input input) throws Exception {
+		return fixtures.loadCSV(input.path);
+	}
+}
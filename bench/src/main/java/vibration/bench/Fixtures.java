@@ -0,0 +1,64 @@
+package vibration.bench;
+
+import java.io.File;
+
+/* Benchmark operations on the application classes
+ *
+ * The application lives in the default package, which JMH benchmarks cannot, and which no
+ * named package can import. BenchFixtures implements this interface from the default
+ * package and is loaded reflectively once per trial, so calls stay monomorphic.
+ */
+
+public interface Fixtures {
+
+	/* read the training and test CSV files and train the shared classifier */
+	void load(String trainFileName, String testFileName) throws Exception;
+
+	/* FeatureCalc.calcFeatures on the next test frame */
+	Object calcFeatures();
+
+	/* FeatureCalc.calcFeatures on the whole test set */
+	Object calcFeaturesBatch();
+
+	/* MLClassifier.classify on the next test frame */
+	String classify();
+
+	/* the same frame through Weka instead of the compiled model */
+	String classifyWeka();
+
+	/* choose how many rows train() uses, repeating the training set as needed */
+	void prepareTraining(int rows);
+
+	Object train();
+
+	/* DataInstance.toCSVRow over the whole training set, returns the characters written */
+	long saveCSV();
+
+	/* CsvLoader over a file, returns the rows read */
+	long loadCSV(String fileName) throws Exception;
+
+	/* a VoteAggregator over window frames, and classified frames to feed it drawn with a fixed seed */
+	void prepareVotes(int window);
+
+	/* VoteAggregator.add with the next frame */
+	int vote();
+
+	/* ClassifyVibration.findMode over the tallies of a trial */
+	String findMode();
+
+	static Fixtures create() throws Exception {
+		return (Fixtures) Class.forName("BenchFixtures").newInstance();
+	}
+
+	/* fixtures are looked up in -Dvibration.data, the working directory, then its parent */
+	static String dataFile(String name) {
+		String dir = System.getProperty("vibration.data");
+		if (dir != null) {
+			return new File(dir, name).getPath();
+		}
+		if (new File(name).exists()) {
+			return name;
+		}
+		return new File("..", name).getPath();
+	}
+}
@@ -0,0 +1,43 @@
+package vibration.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/* MLClassifier.train at several dataset sizes, drawn from test.csv */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class TrainBenchmark {
+
+	@Param({"60", "120", "240", "480"})
+	int rows;
+
+	Fixtures fixtures;
+
+	@Setup
+	public void setup() throws Exception {
+		fixtures = Fixtures.create();
+		fixtures.load(Fixtures.dataFile("test.csv"), Fixtures.dataFile("Robust_Test_Set.csv"));
+		fixtures.prepareTraining(rows);
+	}
+
+	@Benchmark
+	public Object train() {
+		return fixtures.train();
+	}
+}
@@ -0,0 +1,67 @@
+package vibration.bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/* The per-frame VoteAggregator decision, and ClassifyVibration.findMode at the end of a trial */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class VoteBenchmark {
+
+	/* the aggregator's window; a vote should cost the same for every size */
+	@Param({"8", "64", "512"})
+	int window;
+
+	Fixtures fixtures;
+	PrintStream out;
+
+	@Setup
+	public void setup() throws Exception {
+		fixtures = Fixtures.create();
+		fixtures.prepareVotes(window);
+
+		/* findMode prints the tallies on every call, keep that out of the benchmark log */
+		out = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			public void write(int b) {
+			}
+
+			public void write(byte[] b, int off, int len) {
+			}
+		}));
+	}
+
+	@TearDown
+	public void tearDown() {
+		System.setOut(out);
+	}
+
+	@Benchmark
+	public int vote() {
+		return fixtures.vote();
+	}
+
+	@Benchmark
+	public String findMode() {
+		return fixtures.findMode();
+	}
+}
@@ -0,0 +1,39 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/* KernelModel's dot product on the Vector API (JDK 16+, run with --add-modules jdk.incubator.vector)
+ *
+ * Floats are loaded half a preferred vector at a time and widened, so every product and sum is
+ * in double as in the scalar loop and in Weka; two accumulators hide the add latency. Built
+ * from src-vector/ by the app module's vector profile, KernelModel loads it when it can.
+ */
+
+public class VectorDot implements KernelModel.Dot {
+
+	static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+	static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED.withShape(
+			VectorShape.forBitSize(DOUBLES.vectorBitSize() / 2));
+
+	public double dot(float[] x, float[] w, int offset, int n) {
+		int lanes = DOUBLES.length();
+		DoubleVector s0 = DoubleVector.zero(DOUBLES);
+		DoubleVector s1 = DoubleVector.zero(DOUBLES);
+		int k = 0;
+		for (; k + 2 * lanes <= n; k += 2 * lanes) {
+			s0 = widen(x, k).fma(widen(w, offset + k), s0);
+			s1 = widen(x, k + lanes).fma(widen(w, offset + k + lanes), s1);
+		}
+		double res = s0.add(s1).reduceLanes(VectorOperators.ADD);
+		for (; k < n; k++) {
+			res += (double) x[k] * w[offset + k];
+		}
+		return res;
+	}
+
+	private static DoubleVector widen(float[] a, int offset) {
+		return (DoubleVector) FloatVector.fromArray(FLOATS, a, offset).convertShape(VectorOperators.F2D, DOUBLES, 0);
+	}
+}
@@ -0,0 +1,15 @@
+import java.io.IOException;
+
+/* Where decisions are sent: the serial port to the board, or a stand-in when there is none */
+
+public interface Actuator {
+
+	void open() throws IOException;
+
+	boolean isOpen();
+
+	/* send the whole message, or throw if it could not be sent in time */
+	void write(byte[] message) throws IOException;
+
+	void close();
+}
@@ -0,0 +1,136 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/* Sends decisions to an Actuator from its own thread, so the caller never waits on the device
+ *
+ * send() only queues the message. The queue is bounded: when it is full the oldest message
+ * is dropped, since the newest decision matters most, and a message equal to the one
+ * already waiting at the end of the queue is coalesced into it. The writer thread keeps at
+ * least minIntervalMillis between writes, for the board to act on each one, and (re)opens
+ * the actuator with a growing back-off whenever opening or writing fails.
+ */
+
+public class ActuatorQueue {
+
+	final Actuator actuator;
+	final LinkedBlockingDeque<byte[]> queue;
+	long minIntervalMillis = 800;
+	long reconnectMillis = 500;
+	long maxReconnectMillis = 8000;
+
+	final AtomicLong sent = new AtomicLong();
+	final AtomicLong dropped = new AtomicLong();
+	final AtomicLong coalesced = new AtomicLong();
+	final AtomicLong failures = new AtomicLong();
+
+	Thread thread;
+	volatile boolean running = false;
+
+	public ActuatorQueue(Actuator actuator, int capacity) {
+		this.actuator = actuator;
+		this.queue = new LinkedBlockingDeque<>(capacity);
+	}
+
+	public void start() {
+		running = true;
+		thread = new Thread(this::writeLoop, "actuator-writer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/* queue a message without blocking; returns false if it was coalesced with the last one queued */
+	public boolean send(byte[] message) {
+		synchronized (queue) {
+			byte[] last = queue.peekLast();
+			if (last != null && Arrays.equals(last, message)) {
+				coalesced.incrementAndGet();
+				return false;
+			}
+			while (!queue.offerLast(message)) {
+				if (queue.pollFirst() != null) {
+					dropped.incrementAndGet();
+				}
+			}
+			return true;
+		}
+	}
+
+	public boolean send(int value) {
+		return send(new byte[] {(byte) value});
+	}
+
+	public int pending() {
+		return queue.size();
+	}
+
+	public void stop() {
+		running = false;
+		if (thread != null) {
+			thread.interrupt();
+			try {
+				thread.join(2000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		actuator.close();
+	}
+
+	public String toString() {
+		return "sent " + sent + ", dropped " + dropped + ", coalesced " + coalesced + ", failures " + failures + ", pending " + pending();
+	}
+
+	private void writeLoop() {
+		long backoff = reconnectMillis;
+		long lastWrite = 0;
+
+		try {
+			while (running) {
+				if (!actuator.isOpen()) {
+					try {
+						actuator.open();
+						backoff = reconnectMillis;
+					} catch (IOException e) {
+						failures.incrementAndGet();
+						System.out.println(e.getMessage() + ", retrying in " + backoff + " ms");
+						Thread.sleep(backoff);
+						backoff = Math.min(2 * backoff, maxReconnectMillis);
+						continue;
+					}
+				}
+
+				byte[] message = queue.pollFirst(100, TimeUnit.MILLISECONDS);
+				if (message == null) {
+					continue;
+				}
+
+				long wait = lastWrite + minIntervalMillis - System.currentTimeMillis();
+				if (wait > 0) {
+					Thread.sleep(wait);
+				}
+
+				try {
+					actuator.write(message);
+					lastWrite = System.currentTimeMillis();
+					sent.incrementAndGet();
+				} catch (IOException e) {
+					failures.incrementAndGet();
+					e.printStackTrace();
+					actuator.close();
+
+					/* retry after reconnecting, unless a newer decision has taken its place */
+					synchronized (queue) {
+						if (queue.isEmpty()) {
+							queue.offerFirst(message);
+						}
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			/* stop() */
+		}
+	}
+}
@@ -0,0 +1,282 @@
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import processing.sound.FFT;
+
+/* Captures spectra and classifies them on dedicated threads, independent of the render loop */
+
+public class AnalysisPipeline {
+
+	/* called on the classification thread for every classified frame */
+	public interface Listener {
+		void classified(float[] spectrum, String label);
+
+		/* with an onset detector, once per event with the decision over its frames */
+		default void event(String label, int frames) {
+		}
+	}
+
+	FFT fft;
+	SpectrumFrontEnd frontEnd;
+	int bands;
+	long hopNanos;
+	SpectrumRing ring;
+	Listener listener;
+	PipelineMetrics metrics;
+
+	/* classify only inside the events it detects, when set */
+	OnsetDetector detector;
+	volatile String latestEvent;
+
+	/* per-model state of the classification thread */
+	String backgroundLabel = "Neutral";
+	int decisionWindow = 32;
+	ClassifierView view;
+	String[] classNames;
+	int background;
+	VoteAggregator decisions;
+	int[] eventVotes;
+	volatile String latestDecision;
+
+	AtomicReference<MLClassifier> classifier;
+	volatile String latestLabel;
+	volatile boolean running = false;
+
+	Thread captureThread;
+	Thread classifyThread;
+
+	/* classifier is read once per frame, so it can be swapped at any time; several pipelines may share it */
+	public AnalysisPipeline(FFT fft, int bands, long hopNanos, AtomicReference<MLClassifier> classifier, Listener listener) {
+		this.fft = fft;
+		this.bands = bands;
+		this.hopNanos = hopNanos;
+		this.classifier = classifier;
+		this.listener = listener;
+		this.ring = new SpectrumRing(64, bands);
+	}
+
+	/* the same, analysing samples in-process; a frame is captured as soon as a hop of samples has arrived */
+	public AnalysisPipeline(SpectrumFrontEnd frontEnd, long hopNanos, AtomicReference<MLClassifier> classifier, Listener listener) {
+		this((FFT) null, frontEnd.bands(), hopNanos, classifier, listener);
+		this.frontEnd = frontEnd;
+	}
+
+	/* also record per-stage timings into metrics; call before start() */
+	public void setMetrics(PipelineMetrics metrics) {
+		this.metrics = metrics;
+		metrics.setDroppedFrames(this::droppedFrames);
+	}
+
+	/* gate classification on detected events, each ending in one Listener.event; call before start() */
+	public void setOnsetDetector(OnsetDetector detector) {
+		this.detector = detector;
+	}
+
+	/* the decision of the last completed event, or null */
+	public String latestEvent() {
+		return latestEvent;
+	}
+
+	/* the debounced decision over the last decisionWindow frames, or null without a model */
+	public String latestDecision() {
+		return latestDecision;
+	}
+
+	public String latestLabel() {
+		return latestLabel;
+	}
+
+	/* copies the newest captured spectrum into frame, for rendering and training capture */
+	public boolean latestSpectrum(float[] frame) {
+		return ring.latest(frame);
+	}
+
+	public long droppedFrames() {
+		return ring.droppedFrames();
+	}
+
+	public void start() {
+		running = true;
+
+		captureThread = new Thread(this::captureLoop, "spectrum-capture");
+		captureThread.setDaemon(true);
+		captureThread.setPriority(Thread.MAX_PRIORITY);
+
+		classifyThread = new Thread(this::classifyLoop, "spectrum-classify");
+		classifyThread.setDaemon(true);
+
+		captureThread.start();
+		classifyThread.start();
+	}
+
+	public void stop() {
+		running = false;
+		try {
+			captureThread.join();
+			classifyThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/* pull one spectrum per hop, on a fixed schedule that does not drift with slow iterations */
+	private void captureLoop() {
+		if (frontEnd != null) {
+			frontEndLoop();
+			return;
+		}
+
+		float[] frame = new float[bands];
+		long deadline = System.nanoTime();
+
+		while (running) {
+			long start = System.nanoTime();
+			fft.analyze(frame);
+			if (metrics != null) {
+				metrics.fft.recordSince(start);
+			}
+			ring.offer(frame);
+
+			deadline += hopNanos;
+			long wait = deadline - System.nanoTime();
+			if (wait > 0) {
+				LockSupport.parkNanos(wait);
+			} else if (-wait > hopNanos) {
+				/* fell more than a hop behind, resynchronise instead of bursting */
+				deadline = System.nanoTime();
+			}
+		}
+	}
+
+	/* drain every frame the front end has ready, then wait for roughly a quarter hop of samples */
+	private void frontEndLoop() {
+		float[] frame = new float[bands];
+		long idleNanos = Math.max(1, hopNanos / 4);
+
+		while (running) {
+			long start = System.nanoTime();
+			if (!frontEnd.next(frame)) {
+				LockSupport.parkNanos(idleNanos);
+				continue;
+			}
+			if (metrics != null) {
+				metrics.fft.recordSince(start);
+			}
+			ring.offer(frame);
+		}
+	}
+
+	private void classifyLoop() {
+		float[] frame = new float[bands];
+		long idleNanos = TimeUnit.MICROSECONDS.toNanos(500);
+
+		while (running) {
+			if (!ring.poll(frame)) {
+				LockSupport.parkNanos(idleNanos);
+				continue;
+			}
+			process(frame);
+		}
+	}
+
+	/* detect, classify and vote on one frame, on the classification thread */
+	void process(float[] frame) {
+		/* the detector keeps tracking the noise floor even while there is no model */
+		int change = detector == null ? OnsetDetector.NONE : detector.update(frame);
+		if (change == OnsetDetector.OFFSET) {
+			finishEvent();
+		}
+
+		MLClassifier current = classifier.get();
+		if (current == null) {
+			latestLabel = null;
+			latestDecision = null;
+			return;
+		}
+		if (view == null || view.model() != current) {
+			useModel(current);
+		}
+		if (classNames.length == 0) {
+			latestLabel = "Unknown";
+			return;
+		}
+
+		/* outside events the frame is background, without running the classifier */
+		if (detector != null && !detector.active()) {
+			latestLabel = backgroundLabel;
+			if (background >= 0) {
+				latestDecision = decisionLabel(decisions.add(background, 1));
+			}
+			if (metrics != null) {
+				metrics.gatedFrames.incrementAndGet();
+			}
+			return;
+		}
+
+		int index;
+		if (metrics == null) {
+			index = view.classifyIndex(frame);
+		} else {
+			long start = System.nanoTime();
+			float[] features = view.features(frame);
+			long split = metrics.features.recordSince(start);
+			index = view.classifyFeaturesIndex(features);
+			metrics.classify.recordSince(split);
+			metrics.classifiedFrames.incrementAndGet();
+		}
+		if (index < 0) {
+			latestLabel = "Error";
+			return;
+		}
+
+		String label = classNames[index];
+		latestLabel = label;
+		latestDecision = decisionLabel(decisions.add(index, view.lastConfidence()));
+		if (detector != null) {
+			eventVotes[index]++;
+		}
+
+		if (listener != null) {
+			listener.classified(frame, label);
+		}
+	}
+
+	/* with no background class among the model's, the aggregator decides -1 when nothing is clear */
+	private String decisionLabel(int decision) {
+		return decision < 0 ? backgroundLabel : classNames[decision];
+	}
+
+	/* a new model may order or name its classes differently, so start the tallies over */
+	private void useModel(MLClassifier current) {
+		view = new ClassifierView(current);
+		classNames = view.classNames();
+		background = Arrays.asList(classNames).indexOf(backgroundLabel);
+		decisions = new VoteAggregator(classNames.length, decisionWindow, background);
+		decisions.setWeighted(true);
+		eventVotes = new int[classNames.length];
+	}
+
+	/* one decision over the event's frames, like findMode over a manual trial */
+	private void finishEvent() {
+		if (eventVotes == null) {
+			return;
+		}
+		int frames = 0;
+		for (int votes : eventVotes) {
+			frames += votes;
+		}
+		int decision = VoteAggregator.mode(eventVotes, background);
+		Arrays.fill(eventVotes, 0);
+		if (frames == 0) {
+			return;
+		}
+
+		String label = decision < 0 ? backgroundLabel : classNames[decision];
+		latestEvent = label;
+		if (listener != null) {
+			listener.event(label, frames);
+		}
+	}
+}
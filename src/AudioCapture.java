@@ -0,0 +1,138 @@
+import java.io.IOException;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.Mixer;
+import javax.sound.sampled.TargetDataLine;
+
+/* Reads 16-bit samples from a Java Sound input into a SampleRing per channel on its own thread */
+
+public class AudioCapture {
+
+	final SampleRing[] rings;
+	final AudioFormat format;
+	final int blockFrames;
+	String deviceName;
+
+	/* raw samples (of the first channel) are also appended here while it is set */
+	volatile PcmRecorder recorder;
+
+	TargetDataLine line;
+	Thread thread;
+	volatile boolean running = false;
+
+	/* blockFrames is how many samples are handed to the ring at a time, and so the added latency */
+	public AudioCapture(SampleRing ring, float sampleRate, int blockFrames) {
+		this(new SampleRing[] {ring}, sampleRate, blockFrames);
+	}
+
+	/* one sensor per channel of a multi-channel input, each deinterleaved into its own ring */
+	public AudioCapture(SampleRing[] rings, float sampleRate, int blockFrames) {
+		this.rings = rings;
+		this.format = new AudioFormat(sampleRate, 16, rings.length, true, false);
+		this.blockFrames = blockFrames;
+	}
+
+	/* capture from the first mixer whose name contains deviceName, instead of the default input */
+	public void setDevice(String deviceName) {
+		this.deviceName = deviceName;
+	}
+
+	/* start or stop (with null) recording the raw input; returns the recorder that was replaced */
+	public PcmRecorder setRecorder(PcmRecorder recorder) {
+		PcmRecorder previous = this.recorder;
+		this.recorder = recorder;
+		return previous;
+	}
+
+	public static void listDevices() {
+		Mixer.Info[] mixers = AudioSystem.getMixerInfo();
+		for (int i = 0; i < mixers.length; i++) {
+			System.out.println("[" + i + "] " + mixers[i].getName() + ", " + mixers[i].getDescription());
+		}
+	}
+
+	public void start() throws LineUnavailableException {
+		DataLine.Info info = new DataLine.Info(TargetDataLine.class, format);
+		line = null;
+		if (deviceName != null) {
+			for (Mixer.Info mixer : AudioSystem.getMixerInfo()) {
+				if (mixer.getName().contains(deviceName) && AudioSystem.getMixer(mixer).isLineSupported(info)) {
+					line = (TargetDataLine) AudioSystem.getMixer(mixer).getLine(info);
+					break;
+				}
+			}
+		}
+		if (line == null) {
+			line = (TargetDataLine) AudioSystem.getLine(info);
+		}
+		line.open(format, 4 * blockFrames * format.getFrameSize());
+		line.start();
+
+		running = true;
+		thread = new Thread(this::captureLoop, "audio-capture");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MAX_PRIORITY);
+		thread.start();
+	}
+
+	public void stop() {
+		running = false;
+		if (line != null) {
+			line.stop();
+			line.close();
+		}
+		try {
+			if (thread != null) {
+				thread.join();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void captureLoop() {
+		int channels = rings.length;
+		byte[] bytes = new byte[blockFrames * 2 * channels];
+		byte[] channelBytes = new byte[blockFrames * 2];
+		float[] samples = new float[blockFrames];
+
+		while (running) {
+			int read = line.read(bytes, 0, bytes.length);
+			int n = read / (2 * channels);
+			for (int c = 0; c < channels; c++) {
+				byte[] mono = bytes;
+				if (channels > 1) {
+					for (int i = 0; i < n; i++) {
+						channelBytes[2 * i] = bytes[2 * (i * channels + c)];
+						channelBytes[2 * i + 1] = bytes[2 * (i * channels + c) + 1];
+					}
+					mono = channelBytes;
+				}
+
+				PcmRecorder r = recorder;
+				if (c == 0 && r != null) {
+					try {
+						r.write(mono, 0, n * 2);
+					} catch (IOException e) {
+						e.printStackTrace();
+						recorder = null;
+					}
+				}
+				toFloat(mono, n, samples);
+				rings[c].write(samples, 0, n);
+			}
+		}
+	}
+
+	/* n signed 16-bit little-endian samples to floats in [-1, 1) */
+	public static void toFloat(byte[] bytes, int n, float[] samples) {
+		for (int i = 0; i < n; i++) {
+			int lo = bytes[2 * i] & 0xff;
+			int hi = bytes[2 * i + 1];
+			samples[i] = ((hi << 8) | lo) / 32768f;
+		}
+	}
+}
@@ -0,0 +1,50 @@
+import java.util.List;
+
+/* Averages adjacent FFT bins into a fixed number of equally wide bands */
+
+public class BandPooling implements FeatureTransform {
+
+	private static final long serialVersionUID = 1L;
+
+	int nbands;
+	int[] bandStart;
+
+	public BandPooling(int nbands) {
+		this.nbands = nbands;
+	}
+
+	public FeatureTransform fit(List<DataInstance> trainingData, List<String> classLabels) {
+		int nbins = trainingData.get(0).measurements.length;
+		BandPooling res = new BandPooling(Math.min(nbands, nbins));
+
+		res.bandStart = new int[res.nbands + 1];
+		for (int b = 0; b <= res.nbands; b++) {
+			res.bandStart[b] = (int) ((long) nbins * b / res.nbands);
+		}
+		return res;
+	}
+
+	public int outputSize() {
+		return nbands;
+	}
+
+	public String attributeName(int index) {
+		return "band" + index;
+	}
+
+	public void apply(float[] measurements, float[] out) {
+		for (int b = 0; b < nbands; b++) {
+			int from = bandStart[b];
+			int to = bandStart[b + 1];
+			float sum = 0;
+			for (int i = from; i < to; i++) {
+				sum += measurements[i];
+			}
+			out[b] = sum / (to - from);
+		}
+	}
+
+	public String toString() {
+		return "BandPooling(" + nbands + ")";
+	}
+}
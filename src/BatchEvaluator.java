@@ -0,0 +1,181 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/* Headless entry point: train on one CSV file, score another, and report accuracy and latency */
+
+public class BatchEvaluator {
+
+	String[] classNames;
+	int[] actual;
+	int[] predicted;
+	long[] latencyNanos;
+	long totalNanos;
+
+	public static void main(String[] args) throws Exception {
+		String trainFileName = args.length > 0 ? args[0] : "test.csv";
+		String testFileName = args.length > 1 ? args[1] : "Robust_Test_Set.csv";
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+		Map<String, List<DataInstance>> trainingData = CsvLoader.load(trainFileName);
+		List<DataInstance> testData = new ArrayList<>();
+		for (List<DataInstance> v : CsvLoader.load(testFileName).values()) {
+			testData.addAll(v);
+		}
+
+		System.out.println("Training on " + trainFileName + " ...");
+		MLClassifier classifier = new MLClassifier();
+		classifier.train(trainingData);
+
+		System.out.println("Scoring " + testData.size() + " frames from " + testFileName + " on " + threads + " threads ...");
+		BatchEvaluator result = evaluate(classifier, testData, threads);
+		result.print();
+
+		if (!testData.isEmpty()) {
+			double allocated = allocationPerClassify(classifier, testData.get(0).measurements, 100000);
+			if (allocated >= 0) {
+				System.out.printf("Allocation per classify: %.2f bytes%n", allocated);
+			}
+		}
+	}
+
+	/* bytes the calling thread allocates per classify() once warmed up, or -1 if the JVM cannot tell */
+	public static double allocationPerClassify(MLClassifier classifier, float[] frame, int iterations) {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+			return -1;
+		}
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+		long id = Thread.currentThread().getId();
+
+		for (int i = 0; i < iterations; i++) {
+			classifier.classify(frame);
+		}
+
+		long before = threadBean.getThreadAllocatedBytes(id);
+		for (int i = 0; i < iterations; i++) {
+			classifier.classify(frame);
+		}
+		long after = threadBean.getThreadAllocatedBytes(id);
+
+		return (double) (after - before) / iterations;
+	}
+
+	/* score every instance, splitting the list into one contiguous slice per thread */
+	public static BatchEvaluator evaluate(MLClassifier classifier, List<DataInstance> testData, int threads) throws Exception {
+		BatchEvaluator res = new BatchEvaluator();
+		res.classNames = new String[classifier.classattr.numValues()];
+		for (int i = 0; i < res.classNames.length; i++) {
+			res.classNames[i] = classifier.classattr.value(i);
+		}
+
+		int n = testData.size();
+		res.actual = new int[n];
+		res.predicted = new int[n];
+		res.latencyNanos = new long[n];
+
+		threads = Math.max(1, Math.min(threads, n));
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<?>> futures = new ArrayList<>();
+		long start = System.nanoTime();
+
+		try {
+			for (int t = 0; t < threads; t++) {
+				final int from = (int) ((long) n * t / threads);
+				final int to = (int) ((long) n * (t + 1) / threads);
+
+				/* classifiers are not thread-safe, each worker scores with its own copy */
+				final MLClassifier local = classifier.copy();
+
+				futures.add(executor.submit(() -> {
+					for (int i = from; i < to; i++) {
+						DataInstance data = testData.get(i);
+
+						long t0 = System.nanoTime();
+						String label = local.classify(data.measurements);
+						res.latencyNanos[i] = System.nanoTime() - t0;
+
+						res.actual[i] = res.indexOf(data.label);
+						res.predicted[i] = res.indexOf(label);
+					}
+				}));
+			}
+			for (Future<?> f : futures) {
+				f.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		res.totalNanos = System.nanoTime() - start;
+		return res;
+	}
+
+	int indexOf(String label) {
+		for (int i = 0; i < classNames.length; i++) {
+			if (classNames[i].equals(label)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	public double accuracy() {
+		int correct = 0;
+		for (int i = 0; i < actual.length; i++) {
+			if (actual[i] == predicted[i]) {
+				correct++;
+			}
+		}
+		return actual.length == 0 ? 0 : (double) correct / actual.length;
+	}
+
+	/* rows are the recorded label, columns the predicted one */
+	public int[][] confusionMatrix() {
+		int[][] res = new int[classNames.length][classNames.length];
+		for (int i = 0; i < actual.length; i++) {
+			if (actual[i] >= 0 && predicted[i] >= 0) {
+				res[actual[i]][predicted[i]]++;
+			}
+		}
+		return res;
+	}
+
+	public long percentile(double p) {
+		long[] sorted = latencyNanos.clone();
+		Arrays.sort(sorted);
+		if (sorted.length == 0) {
+			return 0;
+		}
+		int index = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+	}
+
+	public void print() {
+		System.out.printf("Accuracy: %.2f%% (%d frames)%n", accuracy() * 100, actual.length);
+
+		System.out.println("Confusion matrix (rows: actual, columns: predicted)");
+		int[][] matrix = confusionMatrix();
+		System.out.printf("%12s", "");
+		for (String name : classNames) {
+			System.out.printf("%10s", name);
+		}
+		System.out.println();
+		for (int i = 0; i < classNames.length; i++) {
+			System.out.printf("%12s", classNames[i]);
+			for (int j = 0; j < classNames.length; j++) {
+				System.out.printf("%10d", matrix[i][j]);
+			}
+			System.out.println();
+		}
+
+		System.out.printf("Per-frame latency (us): p50 %.1f  p90 %.1f  p99 %.1f  max %.1f%n",
+				percentile(50) / 1e3, percentile(90) / 1e3, percentile(99) / 1e3, percentile(100) / 1e3);
+		System.out.printf("Throughput: %.0f frames/s%n", actual.length / (totalNanos / 1e9));
+	}
+}
@@ -0,0 +1,175 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/* A connection to a ClassificationServer, and a load test for one
+ *
+ * classify() sends one frame and waits for its answer. For throughput, send() frames without
+ * waiting and read the answers with receive(), from another thread if need be; the server
+ * answers each connection in roughly but not strictly the order it was sent.
+ */
+
+public class ClassificationClient {
+
+	final Socket socket;
+	final DataInputStream in;
+	final DataOutputStream out;
+	final int measurements;
+	final String[] classNames;
+
+	/* the last answer read by receive() */
+	int id;
+	int classIndex;
+	float confidence;
+
+	public ClassificationClient(String host, int port) throws IOException {
+		socket = new Socket(host == null ? InetAddress.getLoopbackAddress() : InetAddress.getByName(host), port);
+		socket.setTcpNoDelay(true);
+		in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 14));
+		out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+
+		if (in.readInt() != ClassificationServer.MAGIC) {
+			socket.close();
+			throw new IOException("not a classification server");
+		}
+		int version = in.readInt();
+		if (version != ClassificationServer.VERSION) {
+			socket.close();
+			throw new IOException("unsupported server version " + version);
+		}
+		measurements = in.readInt();
+		classNames = new String[in.readInt()];
+		for (int i = 0; i < classNames.length; i++) {
+			classNames[i] = in.readUTF();
+		}
+	}
+
+	/* queue a frame; it is only sent once the buffer fills or flush() is called */
+	public synchronized void send(int id, float[] frame) throws IOException {
+		if (frame.length != measurements) {
+			throw new IOException("frame has " + frame.length + " values, the model expects " + measurements);
+		}
+		out.writeInt(id);
+		for (int i = 0; i < measurements; i++) {
+			out.writeFloat(frame[i]);
+		}
+	}
+
+	public synchronized void flush() throws IOException {
+		out.flush();
+	}
+
+	/* read the next answer into id, classIndex and confidence */
+	public void receive() throws IOException {
+		id = in.readInt();
+		classIndex = in.readShort();
+		confidence = in.readFloat();
+	}
+
+	public String label() {
+		return classIndex < 0 ? "Error" : classNames[classIndex];
+	}
+
+	/* send one frame and wait for its label; not to be mixed with pipelined send() */
+	public String classify(float[] frame) throws IOException {
+		send(0, frame);
+		flush();
+		receive();
+		return label();
+	}
+
+	public void close() throws IOException {
+		socket.close();
+	}
+
+	/* ClassificationClient [frames.csv] [connections] [window] [seconds] [port]
+	 *
+	 * Each connection keeps up to window frames in flight, cycling through the frames of the
+	 * CSV file, and reports throughput and the round-trip latency of every frame.
+	 */
+	public static void main(String[] args) throws Exception {
+		String fileName = args.length > 0 ? args[0] : "Robust_Test_Set.csv";
+		int nconnections = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		int window = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+		int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+		int port = args.length > 4 ? Integer.parseInt(args[4]) : 5209;
+
+		List<DataInstance> frames = new ArrayList<>();
+		for (List<DataInstance> v : CsvLoader.load(fileName).values()) {
+			frames.addAll(v);
+		}
+
+		LatencyHistogram latency = new LatencyHistogram("round trip");
+		AtomicLong answered = new AtomicLong();
+		AtomicLong correct = new AtomicLong();
+		long end = System.nanoTime() + seconds * 1000000000L;
+
+		for (int c = 0; c < nconnections; c++) {
+			ClassificationClient client = new ClassificationClient(null, port);
+
+			/* request ids are window slots; a slot is reused only once its answer is back */
+			BlockingQueue<Integer> free = new ArrayBlockingQueue<>(window);
+			for (int slot = 0; slot < window; slot++) {
+				free.add(slot);
+			}
+			long[] sentAt = new long[window];
+			int[] sentFrame = new int[window];
+
+			Thread sender = new Thread(() -> {
+				try {
+					int f = 0;
+					while (System.nanoTime() < end) {
+						Integer slot = free.poll();
+						if (slot == null) {
+							client.flush();
+							slot = free.take();
+						}
+						sentFrame[slot] = f;
+						sentAt[slot] = System.nanoTime();
+						client.send(slot, frames.get(f).measurements);
+						f = (f + 1) % frames.size();
+					}
+					client.flush();
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}, "load-send-" + c);
+
+			Thread receiver = new Thread(() -> {
+				try {
+					while (true) {
+						client.receive();
+						latency.recordSince(sentAt[client.id]);
+						answered.incrementAndGet();
+						if (client.label().equals(frames.get(sentFrame[client.id]).label)) {
+							correct.incrementAndGet();
+						}
+						free.add(client.id);
+					}
+				} catch (IOException e) {
+					/* the server closed the connection */
+				}
+			}, "load-receive-" + c);
+			sender.setDaemon(true);
+			receiver.setDaemon(true);
+			sender.start();
+			receiver.start();
+		}
+
+		Thread.sleep(seconds * 1000L);
+		long total = answered.get();
+		LatencyHistogram.Snapshot s = latency.snapshotAndReset();
+		System.out.printf("%d connections, %d in flight each: %.0f frames/s, round trip p50 %.1f us, p99 %.1f us, max %.1f us, %.1f%% correct%n",
+				nconnections, window, total / (double) seconds, s.p50 / 1e3, s.p99 / 1e3, s.max / 1e3,
+				100.0 * correct.get() / Math.max(1, total));
+	}
+}
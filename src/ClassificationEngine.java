@@ -0,0 +1,191 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/* Classifies several sensors at once, one AnalysisPipeline per channel, all sharing one model
+ *
+ * Each channel has its own sample ring, FFT front end, onset detector and vote aggregation,
+ * on its own capture and classification threads, so channels run on separate cores. The
+ * model is shared: every pipeline classifies through its own ClassifierView of it, and a
+ * newly trained or updated model reaches all channels on their next frame.
+ */
+
+public class ClassificationEngine {
+
+	/* called on the channel's classification thread */
+	public interface ChannelListener {
+		void event(Channel channel, String label, int frames);
+	}
+
+	public class Channel {
+		final int index;
+		final String name;
+		final SampleRing samples;
+		final AnalysisPipeline pipeline;
+
+		Channel(int index, String name, SampleRing samples) {
+			this.index = index;
+			this.name = name;
+			this.samples = samples;
+
+			SpectrumFrontEnd frontEnd = new SpectrumFrontEnd(samples, 2 * bands, hop, window);
+			pipeline = new AnalysisPipeline(frontEnd, 1000000000L * hop / sampleRate, model, new AnalysisPipeline.Listener() {
+				public void classified(float[] spectrum, String label) {
+				}
+
+				public void event(String label, int frames) {
+					if (listener != null) {
+						listener.event(Channel.this, label, frames);
+					}
+				}
+			});
+			if (detectOnsets) {
+				pipeline.setOnsetDetector(new OnsetDetector());
+			}
+		}
+
+		public String name() {
+			return name;
+		}
+
+		public AnalysisPipeline pipeline() {
+			return pipeline;
+		}
+
+		public SampleRing samples() {
+			return samples;
+		}
+	}
+
+	final AtomicReference<MLClassifier> model;
+	final int bands;
+	final int hop;
+	final Window window;
+	final int sampleRate;
+	boolean detectOnsets = true;
+	ChannelListener listener;
+
+	final List<Channel> channels = new ArrayList<>();
+	final List<AudioCapture> captures = new ArrayList<>();
+	final List<Replay> replays = new ArrayList<>();
+
+	/* a recording and how to play it into its channel */
+	static class Replay {
+		PcmReplay recording;
+		SampleRing target;
+		double speed;
+		boolean loop;
+	}
+
+	public ClassificationEngine(AtomicReference<MLClassifier> model, int bands, int hop, Window window, int sampleRate) {
+		this.model = model;
+		this.bands = bands;
+		this.hop = hop;
+		this.window = window;
+		this.sampleRate = sampleRate;
+	}
+
+	public void setListener(ChannelListener listener) {
+		this.listener = listener;
+	}
+
+	/* gate classification on onsets in every channel added from now on */
+	public void setDetectOnsets(boolean detectOnsets) {
+		this.detectOnsets = detectOnsets;
+	}
+
+	/* a channel reading samples that something else writes into its ring */
+	public Channel addChannel(String name) {
+		Channel res = new Channel(channels.size(), name, new SampleRing(1 << 16));
+		channels.add(res);
+		return res;
+	}
+
+	/* one channel per input channel of a capture device; null uses the default input */
+	public List<Channel> addDevice(String deviceName, int inputChannels) {
+		List<Channel> res = new ArrayList<>();
+		SampleRing[] rings = new SampleRing[inputChannels];
+		for (int c = 0; c < inputChannels; c++) {
+			Channel channel = addChannel((deviceName == null ? "input" : deviceName) + " " + c);
+			rings[c] = channel.samples;
+			res.add(channel);
+		}
+		AudioCapture capture = new AudioCapture(rings, sampleRate, hop);
+		capture.setDevice(deviceName);
+		captures.add(capture);
+		return res;
+	}
+
+	/* a channel replaying a recording, at speed times real time */
+	public Channel addRecording(File recording, double speed, boolean loop) throws Exception {
+		Channel res = addChannel(recording.getName());
+		Replay replay = new Replay();
+		replay.recording = new PcmReplay(recording);
+		replay.target = res.samples;
+		replay.speed = speed;
+		replay.loop = loop;
+		replays.add(replay);
+		return res;
+	}
+
+	public List<Channel> channels() {
+		return channels;
+	}
+
+	public void start() throws Exception {
+		for (Channel channel : channels) {
+			channel.pipeline.start();
+		}
+		for (AudioCapture capture : captures) {
+			capture.start();
+		}
+		for (Replay replay : replays) {
+			replay.recording.play(replay.target, hop, replay.speed, replay.loop);
+		}
+	}
+
+	public void stop() {
+		for (AudioCapture capture : captures) {
+			capture.stop();
+		}
+		for (Replay replay : replays) {
+			replay.recording.stop();
+		}
+		for (Channel channel : channels) {
+			channel.pipeline.stop();
+		}
+	}
+
+	/* replay recordings side by side through one model: ClassificationEngine vibration.model a.wav b.wav ... */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.out.println("usage: ClassificationEngine vibration.model recording.wav...");
+			return;
+		}
+		AtomicReference<MLClassifier> model = new AtomicReference<>(MLClassifier.load(args[0]));
+		double speed = Double.parseDouble(System.getProperty("speed", "4"));
+
+		ClassificationEngine engine = new ClassificationEngine(model, 512, 256, Window.RECTANGULAR, 44100);
+		engine.setListener((channel, label, frames) -> System.out.printf("[%s] %s (%d frames)%n", channel.name(), label, frames));
+		for (int i = 1; i < args.length; i++) {
+			engine.addRecording(new File(args[i]), speed, false);
+		}
+
+		engine.start();
+		boolean playing = true;
+		while (playing) {
+			Thread.sleep(200);
+			playing = false;
+			for (Replay replay : engine.replays) {
+				playing |= replay.recording.isPlaying();
+			}
+		}
+		Thread.sleep(200);
+		engine.stop();
+
+		for (Channel channel : engine.channels) {
+			System.out.printf("[%s] %d frames dropped%n", channel.name(), channel.pipeline.droppedFrames());
+		}
+	}
+}
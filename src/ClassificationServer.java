@@ -0,0 +1,313 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/* Serves one loaded model to other processes on the same host, over a loopback TCP socket
+ *
+ * Framing, big-endian as DataOutputStream writes it:
+ *   server hello:  int MAGIC, int VERSION, int measurements, int nclasses, nclasses x writeUTF(name)
+ *   request:       int id, measurements x float
+ *   response:      int id, short class index (-1 if the model failed), float confidence
+ *
+ * Each connection has a reader thread that parses requests into pooled buffers and queues
+ * them; workers drain whatever is queued, up to maxBatch requests at a time, and classify
+ * them one by one with their own ClassifierView. The batch only saves waking up and counting
+ * per request, the model itself sees single frames. The answered requests go to the
+ * connection's writer thread, which writes whatever has piled up with one flush, so a client
+ * that stops reading only stalls its own writer, never the workers. Responses of one
+ * connection can come back out of order, clients match them by id. A connection has at most
+ * inFlight requests in flight; past that its reader stops reading, so a fast producer is
+ * slowed down by TCP instead of growing the queue.
+ */
+
+public class ClassificationServer {
+
+	static final int MAGIC = 0x56494253;
+	static final int VERSION = 1;
+
+	final MLClassifier model;
+	final int measurements;
+	int workers = Runtime.getRuntime().availableProcessors();
+	int maxBatch = 32;
+	int inFlight = 64;
+
+	final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+	final List<Thread> threads = new ArrayList<>();
+	/* open connections, guarded by itself */
+	final List<Connection> live = new ArrayList<>();
+	ServerSocket serverSocket;
+	volatile boolean running = false;
+
+	final AtomicLong requests = new AtomicLong();
+	final AtomicLong batches = new AtomicLong();
+	final AtomicLong connections = new AtomicLong();
+
+	static class Request {
+		final Connection connection;
+		final float[] frame;
+		int id;
+		short result;
+		float confidence;
+
+		Request(Connection connection, int measurements) {
+			this.connection = connection;
+			this.frame = new float[measurements];
+		}
+	}
+
+	class Connection {
+		final Socket socket;
+		final DataOutputStream out;
+		final BlockingQueue<Request> free;
+		final BlockingQueue<Request> answered;
+		final Thread reader;
+		final Thread writer;
+		volatile boolean open = true;
+
+		Connection(Socket socket) throws IOException {
+			this.socket = socket;
+			this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 14));
+			this.free = new ArrayBlockingQueue<>(inFlight);
+			this.answered = new ArrayBlockingQueue<>(inFlight);
+			for (int i = 0; i < inFlight; i++) {
+				free.add(new Request(this, measurements));
+			}
+			reader = new Thread(this::readLoop, "server-read-" + socket.getPort());
+			writer = new Thread(this::writeLoop, "server-write-" + socket.getPort());
+			reader.setDaemon(true);
+			writer.setDaemon(true);
+		}
+
+		void readLoop() {
+			try {
+				DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+				while (running) {
+					Request request = free.take();
+					boolean queued = false;
+					try {
+						try {
+							request.id = in.readInt();
+						} catch (EOFException e) {
+							break;
+						}
+						for (int i = 0; i < measurements; i++) {
+							request.frame[i] = in.readFloat();
+						}
+						queue.add(request);
+						queued = true;
+					} finally {
+						/* a request not read in full goes back, so the pool stays whole */
+						if (!queued) {
+							free.add(request);
+						}
+					}
+				}
+			} catch (IOException e) {
+				if (open && running) {
+					System.out.println("Connection " + socket.getRemoteSocketAddress() + ": " + e.getMessage());
+				}
+			} catch (InterruptedException e) {
+				/* stop() */
+			}
+			close();
+		}
+
+		void writeLoop() {
+			String[] classNames = model.classNames();
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(measurements);
+				out.writeInt(classNames.length);
+				for (String name : classNames) {
+					out.writeUTF(name);
+				}
+				out.flush();
+
+				while (open) {
+					Request request = answered.take();
+					do {
+						out.writeInt(request.id);
+						out.writeShort(request.result);
+						out.writeFloat(request.confidence);
+						free.add(request);
+						request = answered.poll();
+					} while (request != null);
+					out.flush();
+				}
+			} catch (IOException e) {
+				if (open && running) {
+					System.out.println("Connection " + socket.getRemoteSocketAddress() + ": " + e.getMessage());
+				}
+			} catch (InterruptedException e) {
+				/* close() */
+			}
+			close();
+		}
+
+		/* closing the socket also wakes a reader or writer blocked on it */
+		void close() {
+			open = false;
+			synchronized (live) {
+				live.remove(this);
+			}
+			try {
+				socket.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			reader.interrupt();
+			writer.interrupt();
+		}
+	}
+
+	public ClassificationServer(MLClassifier model) {
+		this.model = model;
+		this.measurements = model.featureCalc.nmeasurements;
+	}
+
+	public void setWorkers(int workers) {
+		this.workers = workers;
+	}
+
+	/* the most requests a worker takes off the queue at once */
+	public void setMaxBatch(int maxBatch) {
+		this.maxBatch = maxBatch;
+	}
+
+	/* listen on the loopback interface only; 0 picks a free port, see port() */
+	public void start(int port) throws IOException {
+		serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		running = true;
+
+		for (int w = 0; w < workers; w++) {
+			Thread t = new Thread(this::workLoop, "server-worker-" + w);
+			t.setDaemon(true);
+			t.start();
+			threads.add(t);
+		}
+		Thread acceptor = new Thread(this::acceptLoop, "server-accept");
+		acceptor.setDaemon(true);
+		acceptor.start();
+		threads.add(acceptor);
+	}
+
+	public int port() {
+		return serverSocket.getLocalPort();
+	}
+
+	public void stop() {
+		running = false;
+		try {
+			serverSocket.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		for (Thread t : threads) {
+			t.interrupt();
+		}
+		List<Connection> open;
+		synchronized (live) {
+			open = new ArrayList<>(live);
+		}
+		for (Connection connection : open) {
+			connection.close();
+		}
+	}
+
+	public String toString() {
+		long b = batches.get();
+		return "connections " + connections + ", requests " + requests + ", batches " + b
+				+ String.format(", %.1f requests a batch", b == 0 ? 0.0 : (double) requests.get() / b);
+	}
+
+	private void acceptLoop() {
+		while (running) {
+			try {
+				Socket socket = serverSocket.accept();
+				socket.setTcpNoDelay(true);
+				Connection connection = new Connection(socket);
+				synchronized (live) {
+					live.add(connection);
+				}
+				/* stop() may have run between accept() and add() */
+				if (!running) {
+					connection.close();
+					break;
+				}
+
+				connections.incrementAndGet();
+				connection.writer.start();
+				connection.reader.start();
+			} catch (IOException e) {
+				if (running) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	private void workLoop() {
+		ClassifierView view = new ClassifierView(model);
+		List<Request> batch = new ArrayList<>(maxBatch);
+
+		try {
+			while (running) {
+				Request first = queue.poll(100, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				queue.drainTo(batch, maxBatch - 1);
+
+				for (Request request : batch) {
+					int result = view.classifyIndex(request.frame);
+					request.result = (short) result;
+					request.confidence = result < 0 ? 0 : view.lastConfidence();
+					/* never blocks: a connection has at most inFlight requests */
+					request.connection.answered.add(request);
+				}
+				requests.addAndGet(batch.size());
+				batches.incrementAndGet();
+				batch.clear();
+			}
+		} catch (InterruptedException e) {
+			/* stop() */
+		}
+	}
+
+	/* ClassificationServer vibration.model [port] [workers] */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.out.println("usage: ClassificationServer vibration.model [port] [workers]");
+			return;
+		}
+		MLClassifier model = MLClassifier.load(args[0]);
+		model.warmUp(20000);
+
+		ClassificationServer server = new ClassificationServer(model);
+		if (args.length > 2) {
+			server.setWorkers(Integer.parseInt(args[2]));
+		}
+		server.start(args.length > 1 ? Integer.parseInt(args[1]) : 5209);
+		System.out.println("Serving " + args[0] + " on " + server.serverSocket.getLocalSocketAddress() + " with " + server.workers + " workers");
+
+		while (true) {
+			Thread.sleep(10000);
+			System.out.println(server);
+		}
+	}
+}
@@ -0,0 +1,88 @@
+/* One thread's handle on a shared MLClassifier
+ *
+ * MLClassifier.classify reuses buffers (the feature array, the vote counts, Weka's filters)
+ * and so must not be called from two threads at once. A view holds its own copies of those
+ * and reads the shared model's compiled form, which is immutable and replaced atomically by
+ * online updates, on every frame. Any number of views can classify with one model at once.
+ */
+
+public class ClassifierView {
+
+	final MLClassifier shared;
+	final FeatureCalc featureCalc;
+	final String[] classNames;
+	final int[] votes;
+	float lastConfidence;
+
+	KernelModel.Buffers kernelBuffers;
+
+	/* only built if the model has no compiled form, since copying the Weka model is expensive */
+	MLClassifier wekaCopy;
+
+	public ClassifierView(MLClassifier shared) {
+		this.shared = shared;
+		this.featureCalc = shared.featureCalc == null ? null : shared.featureCalc.copy();
+		this.classNames = shared.classNames();
+		this.votes = new int[classNames.length];
+	}
+
+	public MLClassifier model() {
+		return shared;
+	}
+
+	public String[] classNames() {
+		return classNames;
+	}
+
+	/* the attribute values for measurements, in a buffer owned by this view */
+	public float[] features(float[] measurements) {
+		return featureCalc == null ? measurements : featureCalc.features(measurements);
+	}
+
+	/* an index into classNames(), or -1 if the model is untrained or failed */
+	public int classifyFeaturesIndex(float[] features) {
+		CompiledModel model = shared.compiled;
+		if (model != null) {
+			int result = model.classify(features, votes);
+			lastConfidence = votes.length > 1 ? (float) votes[result] / (votes.length - 1) : 1;
+			return result;
+		}
+		KernelModel kernelModel = shared.kernelModel;
+		if (kernelModel != null) {
+			if (kernelBuffers == null) {
+				kernelBuffers = kernelModel.buffers();
+			}
+			int result = kernelModel.classify(features, votes, kernelBuffers);
+			lastConfidence = votes.length > 1 ? (float) votes[result] / (votes.length - 1) : 1;
+			return result;
+		}
+		if (shared.classifier == null) {
+			return -1;
+		}
+
+		if (wekaCopy == null) {
+			try {
+				wekaCopy = shared.copy();
+			} catch (Exception e) {
+				e.printStackTrace();
+				return -1;
+			}
+		}
+		int result = wekaCopy.classifyFeaturesIndex(features);
+		lastConfidence = wekaCopy.lastConfidence();
+		return result;
+	}
+
+	public int classifyIndex(float[] measurements) {
+		return classifyFeaturesIndex(features(measurements));
+	}
+
+	public String classify(float[] measurements) {
+		int result = classifyIndex(measurements);
+		return result < 0 ? "Unknown" : classNames[result];
+	}
+
+	public float lastConfidence() {
+		return lastConfidence;
+	}
+}
@@ -1,14 +1,15 @@
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 
+import javax.sound.sampled.LineUnavailableException;
+
 import processing.core.PApplet;
 import processing.sound.AudioIn;
 import processing.sound.FFT;
@@ -32,22 +33,67 @@ public class ClassifyVibration extends PApplet {
 	int classIndex = 0;
 	int dataCount = 0;
 
-	MLClassifier classifier;
-	String saveFileName = "test2.csv";
-	String loadFileName = "test.csv";
+	ModelTrainer trainer = new ModelTrainer();
+	
+	/* what the classifier sees: null for the raw FFT bins, or a FeatureTransform such as
+	 * new SpectralFeatures(sampleRate) (40 mel, MFCC and spectral-shape features) */
+	FeatureTransform featureSet = null;
+	AnalysisPipeline pipeline;
+	int sampleRate = 44100;
+	
+	/* analyse samples with our own FFT front end; false uses processing.sound's FFT and Waveform.
+	 * Off by default: the front end reads captureDevice through Java Sound, whose device list does
+	 * not match processing.sound's, so it would not open the input s.inputDevice(5) selects. Set
+	 * captureDevice to that microphone's mixer name (listed at start-up) before turning it on.
+	 * Recording, replay, several input channels and headless mode all need the front end. */
+	boolean useFrontEnd = false;
+	Window window = Window.RECTANGULAR;
+	int hop = 256;
+	String captureDevice = null;	// part of a Java Sound mixer name, null for the default input
+	int inputChannels = 1;	// one sensor per channel of the capture device
+	ClassificationEngine engine;
+	String replayFileName = null;	// a recording made with 'r' to analyse instead of the live input
+	SampleRing samples;
+	AudioCapture capture;
+	PcmReplay replay;
+	float[] waveformSamples = new float[nsamples];
+	String saveFileName = "test2.csv";	// ending in .vbf saves a FeatureStore instead
+	String loadFileName = "test.csv";	// .csv or .vbf
+	String modelFileName = "vibration.model";
+	
+	/* per-stage timings, summarised every second; 'm' toggles the overlay. Set metricsFileName,
+	 * e.g. to "metrics.jsonl", to also append each summary to a file, one line a second */
+	PipelineMetrics metrics = new PipelineMetrics();
+	String metricsFileName = null;
+	boolean showMetrics = false;
 	String delimiter = ",";
 	
+	/* draw at most renderRate frames a second, each plot as one min/max column per pixel of
+	 * width (sized in setup()); the pipeline analyses every hop on its own thread whatever the render rate */
+	float renderRate = 30;
+	boolean decimate = true;
+	int plotColumns;
+	PlotDecimator wavePlot;
+	PlotDecimator spectrumPlot;
+	
+	/* classify without opening a window, e.g. on an edge box: ClassifyVibration --headless;
+	 * results are printed per detected event, so this turns autoDetect on */
+	boolean headless = false;
+	
+	/* classify only inside automatically detected events, each giving one result; off by default,
+	 * since event results are numbered as trials alongside the space-bar ones */
+	boolean autoDetect = false;
+	
 	/*variables for space bar data collection */
-	boolean collectData = false;
-	ArrayList<String> dataCollected = new ArrayList<String>();
-	ArrayList<String> results = new ArrayList<String>();
+	volatile boolean collectData = false;
+	int[] trialVotes = new int[classNames.length];	// non-Neutral frames per class in the current trial
+	ArrayDeque<String> results = new ArrayDeque<String>();	// the last maxResults trial results
+	int maxResults = 50;
+	int trialCount = 0;
 	
-	Map<String, List<DataInstance>> trainingData = new HashMap<>();
-	{
-		for (String className : classNames){
-			trainingData.put(className, new ArrayList<DataInstance>());
-		}
-	}
+	/* at most trainingCapacity frames per class, so long sessions keep memory and training time bounded */
+	int trainingCapacity = 1000;
+	TrainingStore trainingData = new TrainingStore(classNames, trainingCapacity);
 	
 	DataInstance captureInstance (String label){
 		DataInstance res = new DataInstance();
@@ -56,94 +102,271 @@ public class ClassifyVibration extends PApplet {
 		return res;
 	}
 	
-	public String findMode(ArrayList<String> values) {
-		if (values.size() == 0) {	//edge case of all neutral values
-			return "No Action Detected";
+	int classNameIndex(String label) {
+		for (int i = 0; i < classNames.length; i++) {
+			if (classNames[i].equals(label)) {
+				return i;
+			}
 		}
+		return -1;
+	}
+	
+	/* votes holds a count per entry of classNames */
+	public String findMode(int[] votes) {
+		int neutral = classNameIndex("Neutral");
+		int mostFound = VoteAggregator.mode(votes, neutral);	//a tie is Neutral
 		
-		String mostFound = "";
-		int[] classifications = {0, 0};
-		for (String i : values) {
-			if (i == "Scratch") {classifications[0] = classifications[0] + 1;}
-			else if (i == "Tap") {classifications[1] = classifications[1] + 1;}
-		}
-		if (classifications[0] > classifications[1]) {mostFound = "Scratch";}
-		else if (classifications[0] < classifications[1]) {mostFound = "Tap";}
-		else {
-			//mostFound = "Tap";
-			mostFound = "Neutral";
-			}	//default to tap in case that there is a tie since it is less reliable than scratch. Wrote separately to make updating edge case easier
+		System.out.println(Arrays.toString(votes));
 		
-		System.out.println(classifications[0] + " " + classifications[1]);
+		if (mostFound < 0) {	//edge case of all neutral values
+			return "No Action Detected";
+		}
+		return classNames[mostFound];
+	}
+	
+	/* keep the last maxResults results and print them; callers hold the trialVotes lock */
+	void addResult(String result) {
+		results.addLast(result);
+		trialCount++;
+		if (results.size() > maxResults) {
+			results.removeFirst();
+		}
 		
-		return mostFound;
+		int i = trialCount - results.size();
+		for (String r : results) {
+			System.out.print("The classification of trial ");
+			System.out.print(i++);
+			System.out.print(": ");
+			System.out.println(r);
+		}
+		System.out.println("-----------------------------------------------------");
 	}
 	
 	public static void main(String[] args) {
+		if (Arrays.asList(args).contains("--headless")) {
+			ClassifyVibration app = new ClassifyVibration();
+			app.headless = true;
+			app.setup();
+			Runtime.getRuntime().addShutdownHook(new Thread(app::shutdown));
+			
+			/* all pipeline threads are daemons, keep the JVM up until it is killed */
+			try {
+				Thread.currentThread().join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return;
+		}
 		PApplet.main("ClassifyVibration");
 	}
 	
+	/* stop capture and analysis; headless runs call this on exit */
+	void shutdown() {
+		if (capture != null) {
+			capture.stop();
+		}
+		if (replay != null) {
+			replay.stop();
+		}
+		if (engine != null) {
+			engine.stop();
+		}
+		pipeline.stop();
+		metrics.stop();
+	}
+	
 	public void settings() {
 		size(512, 400);
 	}
 
 	public void setup() {
+		if (featureSet != null) {
+			trainer.setFactory(() -> new MLClassifier(featureSet));
+		}
+		if (headless || replayFileName != null || inputChannels > 1) {
+			/* processing.sound needs the window and has one live input, only the front end does these */
+			useFrontEnd = true;
+		}
+		if (headless) {
+			/* without a window there are no space-bar trials, events are the only results */
+			autoDetect = true;
+		} else {
+			frameRate(renderRate);
+			plotColumns = width;
+			wavePlot = new PlotDecimator(plotColumns);
+			spectrumPlot = new PlotDecimator(plotColumns);
+		}
+		
+		AnalysisPipeline.Listener listener = new AnalysisPipeline.Listener() {
+			public void classified(float[] frame, String label) {
+				if (collectData && !label.equals("Neutral")) {
+					int c = classNameIndex(label);
+					synchronized (trialVotes) {
+						if (c >= 0) {
+							trialVotes[c]++;
+						}
+					}
+				}
+			}
+			
+			public void event(String label, int frames) {
+				synchronized (trialVotes) {
+					addResult(label);
+				}
+			}
+		};
 		
-		/* list all audio devices */
-		Sound.list();
-		Sound s = new Sound(this);
-		  
-		/* select microphone device */
-		s.inputDevice(5);
-		    
-		/* create an Input stream which is routed into the FFT analyzer */
-		fft = new FFT(this, bands);
-		in = new AudioIn(this, 0);
-		waveform = new Waveform(this, nsamples);
-		waveform.input(in);
+		if (useFrontEnd) {
+			/* capture raw samples and run the FFT in-process, one frame per hop of samples */
+			samples = new SampleRing(1 << 16);
+			if (replayFileName != null) {
+				try {
+					replay = new PcmReplay(new File(replayFileName));
+					replay.play(samples, hop, 1.0, true);
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			} else {
+				/* input channels beyond the first are classified by the engine, with the same model */
+				SampleRing[] rings = new SampleRing[inputChannels];
+				rings[0] = samples;
+				if (inputChannels > 1) {
+					engine = new ClassificationEngine(trainer.active, bands, hop, window, sampleRate);
+					engine.setDetectOnsets(autoDetect);
+					engine.setListener((channel, label, frames) -> {
+						synchronized (trialVotes) {
+							addResult(channel.name() + ": " + label);
+						}
+					});
+					for (int c = 1; c < inputChannels; c++) {
+						rings[c] = engine.addChannel("Sensor " + c).samples();
+					}
+					try {
+						engine.start();
+					} catch (Exception e) {
+						e.printStackTrace();
+					}
+				}
+				
+				AudioCapture.listDevices();
+				capture = new AudioCapture(rings, sampleRate, hop);
+				capture.setDevice(captureDevice);
+				try {
+					capture.start();
+				} catch (LineUnavailableException e) {
+					e.printStackTrace();
+				}
+			}
+			
+			SpectrumFrontEnd frontEnd = new SpectrumFrontEnd(samples, 2 * bands, hop, window);
+			pipeline = new AnalysisPipeline(frontEnd, 1000000000L * hop / sampleRate, trainer.active, listener);
+		} else {
+			/* list all audio devices */
+			Sound.list();
+			Sound s = new Sound(this);
+			  
+			/* select microphone device */
+			s.inputDevice(5);
+			    
+			/* create an Input stream which is routed into the FFT analyzer */
+			fft = new FFT(this, bands);
+			in = new AudioIn(this, 0);
+			waveform = new Waveform(this, nsamples);
+			waveform.input(in);
+			
+			/* start the Audio Input */
+			in.start();
+			  
+			/* patch the AudioIn */
+			fft.input(in);
+			
+			/* capture and classify one FFT frame per hop, off the render thread */
+			long hopNanos = 1000000000L * nsamples / sampleRate;
+			pipeline = new AnalysisPipeline(fft, bands, hopNanos, trainer.active, listener);
+		}
+		pipeline.setMetrics(metrics);
+		if (autoDetect) {
+			pipeline.setOnsetDetector(new OnsetDetector());
+		}
+		pipeline.start();
+		metrics.start(1000, metricsFileName);
 		
-		/* start the Audio Input */
-		in.start();
-		  
-		/* patch the AudioIn */
-		fft.input(in);
+		/* go straight to classifying with the last saved model, if there is one */
+		if (new File(modelFileName).exists()) {
+			try {
+				MLClassifier classifier = MLClassifier.load(modelFileName);
+				classifier.warmUp(20000);
+				trainer.publish(classifier);
+				println("Loaded model " + modelFileName);
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		} else if (headless) {
+			println("No model " + modelFileName + ", train and save one with 'p' first");
+		}
 	}
 
 	public void draw() {
+		long drawStart = System.nanoTime();
 		background(0);
 		fill(0);
 		stroke(255);
 		
-		waveform.analyze();
-
-		beginShape();
-		  
-		for(int i = 0; i < nsamples; i++)
-		{
-			vertex(
-					map(i, 0, nsamples, 0, width),
-					map(waveform.data[i], -1, 1, 0, height)
-					);
+		float[] wave;
+		if (useFrontEnd) {
+			samples.latest(waveformSamples);
+			wave = waveformSamples;
+		} else {
+			waveform.analyze();
+			wave = waveform.data;
 		}
-		
-		endShape();
-
-		fft.analyze(spectrum);
-
-		for(int i = 0; i < bands; i++){
+		long renderStart = metrics.waveform.recordSince(drawStart);
+		pipeline.latestSpectrum(spectrum);
+		System.arraycopy(spectrum, 0, fftFeatures, 0, bands);
 
-			/* the result of the FFT is normalized */
-			/* draw the line for frequency band i scaling it up by 40 to get more amplitude */
-			line( i, height, i, height - spectrum[i]*height*40);
-			fftFeatures[i] = spectrum[i];
-		} 
+		if (decimate) {
+			/* one vertical min-max line per column, for the waveform and the spectrum */
+			wavePlot.decimate(wave, nsamples);
+			spectrumPlot.decimate(spectrum, bands);
+			float columnWidth = (float) width / plotColumns;
+			for (int c = 0; c < plotColumns; c++) {
+				float x = c * columnWidth;
+				line(x, map(wavePlot.min(c), -1, 1, 0, height), x, map(wavePlot.max(c), -1, 1, 0, height) + 1);
+				line(x, height, x, height - spectrumPlot.max(c)*height*40);
+			}
+		} else {
+			beginShape();
+			  
+			for(int i = 0; i < nsamples; i++)
+			{
+				vertex(
+						map(i, 0, nsamples, 0, width),
+						map(wave[i], -1, 1, 0, height)
+						);
+			}
+			
+			endShape();
+	
+			for(int i = 0; i < bands; i++){
+	
+				/* the result of the FFT is normalized */
+				/* draw the line for frequency band i scaling it up by 40 to get more amplitude */
+				line( i, height, i, height - spectrum[i]*height*40);
+			}
+		}
+		metrics.render.recordSince(renderStart);
 
 		fill(255);
 		textSize(30);
+		MLClassifier classifier = trainer.active();
+		String progress = trainer.progress();
+		if (progress != null) {
+			text(progress, 20, 90);
+		}
+		
 		if(classifier != null) {
-			String guessedLabel = classifier.classify(captureInstance(null));
-			
 			// Yang: add code to stabilize your classification results
+			// labels are collected and debounced (VoteAggregator) on the classification thread, see AnalysisPipeline
 			
 			if (collectData == false) {
 				text("Press space bar to start recording data", 20, 30);
@@ -151,9 +374,25 @@ public class ClassifyVibration extends PApplet {
 			
 			if ((collectData == true)) {	//space bar pressed the first time, start collecting data
 				text("Now collecting data", 20, 30);
-				if (guessedLabel != "Neutral") {
-					dataCollected.add(guessedLabel);
+			}
+			
+			String decision = pipeline.latestDecision();
+			if (decision != null) {
+				text(decision, 20, 60);
+			}
+			
+			String event = pipeline.latestEvent();
+			if (autoDetect && event != null) {
+				text("Last event: " + event, 200, 60);
+			}
+			
+			if (engine != null) {
+				textSize(14);
+				for (ClassificationEngine.Channel channel : engine.channels()) {
+					String channelDecision = channel.pipeline().latestDecision();
+					text(channel.name() + ": " + (channelDecision == null ? "-" : channelDecision), 380, 20 + 16 * channel.index);
 				}
+				textSize(30);
 			}
 			
 //			text("classified as: " + guessedLabel, 20, 30);
@@ -162,9 +401,18 @@ public class ClassifyVibration extends PApplet {
 			}
 		else {
 			text(classNames[classIndex], 20, 30);
-			dataCount = trainingData.get(classNames[classIndex]).size();
+			dataCount = trainingData.size(classNames[classIndex]);
 			text("Data collected: " + dataCount, 20, 60);
 		}
+		
+		PipelineMetrics.Report report = metrics.latest();
+		if (showMetrics && report != null) {
+			textSize(12);
+			text(report.overlay(), 20, 120);
+		}
+		
+		metrics.draw.recordSince(drawStart);
+		metrics.renderedFrames.incrementAndGet();
 	}
 	
 	public void keyPressed() {
@@ -174,92 +422,124 @@ public class ClassifyVibration extends PApplet {
 			classIndex = (classIndex + 1) % classNames.length;
 		}
 		
-		// Start training model
+		// Start training model in the background; the current model keeps classifying until it is replaced
 		else if (key == 't') {
-			if(classifier == null) {
-				println("Start training ...");
-				classifier = new MLClassifier();
-				classifier.train(trainingData);
+			if(trainer.isTraining()) {
+				trainer.cancel();
+				println("Training cancelled");
 			}else {
-				classifier = null;
+				println("Start training ...");
+				trainer.train(trainingData);
 			}
 		}
 		
+		// Start or stop recording the raw input, for replaying it later
+		else if (key == 'r') {
+			if (capture == null) {
+				/* Processing's AudioIn only hands its samples to the FFT, there is nothing to record */
+				println("Recording needs the live front end: set useFrontEnd = true");
+				return;
+			}
+			try {
+				PcmRecorder recorder = capture.setRecorder(null);
+				if (recorder != null) {
+					recorder.close();
+					println("Recorded " + recorder.samplesWritten() + " samples");
+				} else {
+					String fileName = "session-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".wav";
+					capture.setRecorder(new PcmRecorder(new File(fileName), sampleRate));
+					println("Recording to " + fileName);
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		
+		// Show or hide the pipeline timings
+		else if (key == 'm') {
+			showMetrics = !showMetrics;
+		}
+		
+		// Clear the model and go back to collecting training data
+		else if (key == 'c') {
+			trainer.cancel();
+			trainer.publish(null);
+		}
+		
 		// Save data as a model
 		else if (key == 's') {
 			System.out.println("Saving file");
 			
-			File csvFile = new File(saveFileName);
-			FileWriter fileWriter;
 			try {
-				fileWriter = new FileWriter(csvFile);
-			
-				for (String className : classNames) {
-					for (DataInstance data : trainingData.get(className)) {
-						String line = data.toCSVRow();
-						fileWriter.write(line);
-					}
+				if (saveFileName.endsWith(".vbf")) {
+					/* the binary store, for sessions too large to round-trip through CSV quickly */
+					Map<String, List<DataInstance>> snapshot = trainingData.snapshot();
+					FeatureStore.write(new File(saveFileName), snapshot.keySet().toArray(new String[0]), snapshot);
+				} else {
+					FileWriter fileWriter = new FileWriter(new File(saveFileName));
+					trainingData.writeCSV(fileWriter);
+					fileWriter.close();
 				}
-				fileWriter.close();
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
 		}
 		
 		
+		// Persist the trained model so the next start can skip training
+		else if (key == 'p') {
+			MLClassifier classifier = trainer.active();
+			if (classifier != null) {
+				try {
+					classifier.save(modelFileName);
+					println("Saved model " + modelFileName);
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		
 		// Load previously trained model
 		else if (key == 'l') {    
 			System.out.println("Loading!");
-			String line = "";
 			try {
-				BufferedReader br = new BufferedReader(new FileReader(loadFileName));
-				while((line = br.readLine()) != null) {
-					line = line.substring(1);
-					String[] dataInstance = line.split(",");
-					String label = dataInstance[dataInstance.length - 1];
-					float[] floatdata = new float[dataInstance.length - 2];
-					for (int i = 1; i < dataInstance.length - 1; i++) {
-						floatdata[i - 1] = Float.parseFloat(dataInstance[i]);
+				if (loadFileName.endsWith(".vbf")) {
+					FeatureStore store = FeatureStore.open(new File(loadFileName));
+					float[] row = new float[store.bins()];
+					for (int r = 0; r < store.rows(); r++) {
+						store.row(r, row);
+						trainingData.add(store.labelName(r), row);
 					}
-					DataInstance res = new DataInstance();
-					res.label = label;
-					res.measurements = floatdata;
-					
-					trainingData.get(label).add(res);
-					
+				} else {
+					new CsvLoader().stream(loadFileName, (values, length, label) -> trainingData.add(label, values, length));
 				}
-				br.close();
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
 			
-			if(classifier == null) {
-				println("Start training ...");
-				classifier = new MLClassifier();
-				classifier.train(trainingData);
-			}else {
-				classifier = null;
-			}
+			println("Start training ...");
+			trainer.train(trainingData);
 			System.out.println("Load complete!");
 		}
 		else if (key == ' ') {
 			if (collectData == false) {collectData = true;}	//start collecting data
 			else {	//stop collecting data, call findMode function, store result & output results
-				collectData = false;	//stop collecting data
-				results.add(findMode(dataCollected));	//add classification result to results array
-				int results_size = results.size();
-				for (int i = 0; i < results_size; i++) {	//print results array each time
-					System.out.print("The classification of trial ");
-					System.out.print(i);
-					System.out.print(": ");
-					System.out.println(results.get(i));
+				synchronized (trialVotes) {
+					collectData = false;	//stop collecting data
+					addResult(findMode(trialVotes));	//add classification result to results array
+					Arrays.fill(trialVotes, 0);
 				}
-				System.out.println("-----------------------------------------------------");
-				dataCollected.clear();
 				}
 		}
 		else {
-			trainingData.get(classNames[classIndex]).add(captureInstance(classNames[classIndex]));
+			DataInstance data = captureInstance(classNames[classIndex]);
+			trainingData.add(data);
+			
+			/* with a model running, the sample also corrects it right away */
+			MLClassifier classifier = trainer.active();
+			if (classifier != null && classifier.addData(data)) {
+				trainer.fold(classifier);
+			}
 		}
 		
 	}
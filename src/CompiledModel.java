@@ -0,0 +1,276 @@
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import weka.classifiers.functions.SMO;
+import weka.core.Attribute;
+import weka.filters.unsupervised.attribute.Normalize;
+
+/* A trained linear SMO flattened into plain arrays, evaluated without Weka
+ *
+ * With PolyKernel -E 1.0 every pairwise SVM is w . normalize(x) - b. The min/max
+ * normalisation is folded into the weights, so each pair is one dot product over the
+ * raw spectrum plus a constant, and the pairwise votes are tallied exactly as
+ * SMO.distributionForInstance does.
+ */
+
+public class CompiledModel implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	String[] classNames;
+	int nfeatures;
+	int[] pairFirst;
+	int[] pairSecond;
+
+	/* [pair][feature], with the constant term stored in column nfeatures */
+	float[][] weights;
+
+	/* the normalisation folded into weights, kept so online updates can work in SMO's space */
+	float[] min;
+	float[] scale;
+
+	/* returns null if the SMO was not trained with a linear kernel */
+	public static CompiledModel compile(SMO smo, Normalize normalize, Attribute classattr) {
+		double[][][] sparseWeights = smo.sparseWeights();
+		int[][][] sparseIndices = smo.sparseIndices();
+		double[][] bias = smo.bias();
+		if (sparseWeights == null) {
+			return null;
+		}
+
+		double[] min = normalize.getMinArray();
+		double[] max = normalize.getMaxArray();
+		int nclasses = classattr.numValues();
+
+		CompiledModel res = new CompiledModel();
+		res.nfeatures = classattr.index();
+		res.min = new float[res.nfeatures];
+		res.scale = new float[res.nfeatures];
+		for (int k = 0; k < res.nfeatures; k++) {
+			double range = max[k] - min[k];
+			if (!Double.isNaN(min[k]) && range != 0) {
+				res.min[k] = (float) min[k];
+				res.scale[k] = (float) (1 / range);
+			}
+		}
+		res.classNames = new String[nclasses];
+		for (int i = 0; i < nclasses; i++) {
+			res.classNames[i] = classattr.value(i);
+		}
+
+		List<int[]> pairs = new ArrayList<>();
+		List<float[]> rows = new ArrayList<>();
+		for (int i = 0; i < nclasses; i++) {
+			for (int j = i + 1; j < nclasses; j++) {
+				double[] w = sparseWeights[i][j];
+				if (w == null) {
+					/* a pair that was never trained, SMO does not vote on it either */
+					continue;
+				}
+
+				double[] row = new double[res.nfeatures];
+				for (int p = 0; p < w.length; p++) {
+					int index = sparseIndices[i][j][p];
+					if (index < res.nfeatures) {
+						row[index] = w[p];
+					}
+				}
+
+				/* w . ((x - min) / (max - min)) - b  ==  (w / (max - min)) . x - (b + w . min / (max - min)) */
+				float[] folded = new float[res.nfeatures + 1];
+				double constant = -bias[i][j];
+				for (int k = 0; k < res.nfeatures; k++) {
+					double range = max[k] - min[k];
+					if (Double.isNaN(min[k]) || range == 0) {
+						/* Normalize maps constant attributes to 0 */
+						continue;
+					}
+					folded[k] = (float) (row[k] / range);
+					constant -= row[k] * min[k] / range;
+				}
+				folded[res.nfeatures] = (float) constant;
+
+				pairs.add(new int[] {i, j});
+				rows.add(folded);
+			}
+		}
+
+		if (pairs.isEmpty()) {
+			return null;
+		}
+
+		res.pairFirst = new int[pairs.size()];
+		res.pairSecond = new int[pairs.size()];
+		res.weights = new float[pairs.size()][];
+		for (int p = 0; p < pairs.size(); p++) {
+			res.pairFirst[p] = pairs.get(p)[0];
+			res.pairSecond[p] = pairs.get(p)[1];
+			res.weights[p] = rows.get(p);
+		}
+		return res;
+	}
+
+	/* index into classNames of the winning class; safe to call from several threads */
+	public int classify(float[] x) {
+		return classify(x, new int[classNames.length]);
+	}
+
+	/* same, counting the pairwise votes into a caller-owned buffer of classNames.length */
+	public int classify(float[] x, int[] votes) {
+		for (int c = 0; c < votes.length; c++) {
+			votes[c] = 0;
+		}
+		for (int p = 0; p < weights.length; p++) {
+			if (decision(weights[p], x) > 0) {
+				votes[pairSecond[p]]++;
+			} else {
+				votes[pairFirst[p]]++;
+			}
+		}
+
+		/* ties go to the lower index, like weka.core.Utils.maxIndex */
+		int best = 0;
+		for (int c = 1; c < votes.length; c++) {
+			if (votes[c] > votes[best]) {
+				best = c;
+			}
+		}
+		return best;
+	}
+
+	/* the raw SVM output of one pair, positive means a vote for pairSecond[pair] */
+	public double decision(int pair, float[] x) {
+		return decision(weights[pair], x);
+	}
+
+	/* a copy with one passive-aggressive (PA-I) hinge step applied to every pair involving classIndex
+	 *
+	 * The step is taken on the normalised features SMO was trained on, then folded back into the
+	 * raw-space weights, so its cost is O(pairs * features) and the model stays immutable.
+	 */
+	public CompiledModel update(float[] x, int classIndex, double c) {
+		CompiledModel res = new CompiledModel();
+		res.classNames = classNames;
+		res.nfeatures = nfeatures;
+		res.pairFirst = pairFirst;
+		res.pairSecond = pairSecond;
+		res.min = min;
+		res.scale = scale;
+		res.weights = weights.clone();
+
+		double norm = 1;
+		for (int k = 0; k < nfeatures; k++) {
+			double xn = (x[k] - min[k]) * scale[k];
+			norm += xn * xn;
+		}
+
+		for (int p = 0; p < weights.length; p++) {
+			int target;
+			if (pairSecond[p] == classIndex) {
+				target = 1;
+			} else if (pairFirst[p] == classIndex) {
+				target = -1;
+			} else {
+				continue;
+			}
+
+			double loss = 1 - target * decision(weights[p], x);
+			if (loss <= 0) {
+				continue;
+			}
+			double step = target * Math.min(c, loss / norm);
+
+			/* w_k += step * xn_k and b -= step, expressed on the folded weights */
+			float[] w = weights[p].clone();
+			double constant = w[nfeatures] + step;
+			for (int k = 0; k < nfeatures; k++) {
+				double delta = step * (x[k] - min[k]) * scale[k] * scale[k];
+				w[k] += delta;
+				constant -= delta * min[k];
+			}
+			w[nfeatures] = (float) constant;
+			res.weights[p] = w;
+		}
+		return res;
+	}
+
+	public int classIndex(String label) {
+		for (int i = 0; i < classNames.length; i++) {
+			if (classNames[i].equals(label)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	public String classifyLabel(float[] x) {
+		return classNames[classify(x)];
+	}
+
+	private double decision(float[] w, float[] x) {
+		int n = nfeatures;
+		double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+		int k = 0;
+		/* products in double, as Weka's dotProd computes them */
+		for (; k + 3 < n; k += 4) {
+			s0 += (double) w[k] * x[k];
+			s1 += (double) w[k + 1] * x[k + 1];
+			s2 += (double) w[k + 2] * x[k + 2];
+			s3 += (double) w[k + 3] * x[k + 3];
+		}
+		for (; k < n; k++) {
+			s0 += (double) w[k] * x[k];
+		}
+		return (s0 + s1) + (s2 + s3) + w[n];
+	}
+
+	/* train on one CSV file and check the compiled model against Weka on each file given */
+	public static void main(String[] args) throws Exception {
+		String trainFileName = args.length > 0 ? args[0] : "test.csv";
+		Map<String, List<DataInstance>> trainingData = CsvLoader.load(trainFileName);
+
+		MLClassifier classifier = new MLClassifier();
+		classifier.train(trainingData);
+		if (classifier.compiled == null) {
+			System.out.println("The trained model has no linear form to compile");
+			return;
+		}
+
+		String[] fileNames = args.length > 1 ? Arrays.copyOfRange(args, 1, args.length)
+				: new String[] {"test.csv", "Robust_Test_Set.csv"};
+		for (String fileName : fileNames) {
+			List<DataInstance> data = new ArrayList<>();
+			for (List<DataInstance> v : CsvLoader.load(fileName).values()) {
+				data.addAll(v);
+			}
+
+			int agree = 0;
+			long wekaNanos = 0;
+			long compiledNanos = 0;
+			for (int round = 0; round < 5; round++) {
+				wekaNanos = 0;
+				compiledNanos = 0;
+				agree = 0;
+				for (DataInstance d : data) {
+					long t0 = System.nanoTime();
+					String weka = classifier.classifyWeka(d.measurements);
+					long t1 = System.nanoTime();
+					String fast = classifier.compiled.classifyLabel(d.measurements);
+					long t2 = System.nanoTime();
+
+					wekaNanos += t1 - t0;
+					compiledNanos += t2 - t1;
+					if (weka.equals(fast)) {
+						agree++;
+					}
+				}
+			}
+
+			System.out.printf("%s: %d/%d frames agree with Weka, %.0f ns/frame Weka, %.0f ns/frame compiled%n",
+					fileName, agree, data.size(), (double) wekaNanos / data.size(), (double) compiledNanos / data.size());
+		}
+	}
+}
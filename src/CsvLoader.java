@@ -0,0 +1,292 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/* A streaming parser for the files written by DataInstance.toCSVRow()
+ *
+ * Rows are parsed byte by byte straight into a reused float[] and handed to a consumer,
+ * so the whole file never has to be held in memory. The leading comma toCSVRow() emits
+ * is optional. Rows that cannot be parsed are reported to an ErrorHandler and skipped.
+ */
+
+public class CsvLoader {
+
+	/* receives each good row; values is reused for the next row, copy it to keep it */
+	public interface RowConsumer {
+		void row(float[] values, int length, String label);
+	}
+
+	public interface ErrorHandler {
+		void malformed(long lineNumber, String reason);
+	}
+
+	static final double[] POW10 = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	ErrorHandler errorHandler = (lineNumber, reason) -> System.out.println("Skipping line " + lineNumber + ": " + reason);
+	int expectedValues = -1;
+	long rowsRead = 0;
+	long rowsRejected = 0;
+
+	/* labels seen so far, so each distinct label is decoded to a String only once */
+	List<byte[]> labelBytes = new ArrayList<>();
+	List<String> labels = new ArrayList<>();
+
+	float[] values = new float[512];
+	int nvalues;
+	byte[] field = new byte[64];
+	int fieldLength;
+	int fieldIndex;
+	float parsed;
+	String error;
+
+	public void setErrorHandler(ErrorHandler errorHandler) {
+		this.errorHandler = errorHandler;
+	}
+
+	/* every row must have this many values; by default it is taken from the first good row */
+	public void setExpectedValues(int expectedValues) {
+		this.expectedValues = expectedValues;
+	}
+
+	public long rowsRead() {
+		return rowsRead;
+	}
+
+	public long rowsRejected() {
+		return rowsRejected;
+	}
+
+	/* read a whole file into a map of label to instances, in file order */
+	public static Map<String, List<DataInstance>> load(String fileName) throws IOException {
+		Map<String, List<DataInstance>> res = new LinkedHashMap<>();
+		new CsvLoader().loadInto(fileName, res);
+		return res;
+	}
+
+	public void loadInto(String fileName, Map<String, List<DataInstance>> trainingData) throws IOException {
+		stream(fileName, (values, length, label) -> {
+			DataInstance data = new DataInstance();
+			data.label = label;
+			data.measurements = new float[length];
+			System.arraycopy(values, 0, data.measurements, 0, length);
+			trainingData.computeIfAbsent(label, k -> new ArrayList<>()).add(data);
+		});
+	}
+
+	public void stream(String fileName, RowConsumer consumer) throws IOException {
+		InputStream in = new FileInputStream(fileName);
+		try {
+			stream(in, consumer);
+		} finally {
+			in.close();
+		}
+	}
+
+	public void stream(InputStream in, RowConsumer consumer) throws IOException {
+		byte[] buf = new byte[1 << 16];
+		long lineNumber = 1;
+		startRow();
+
+		int n;
+		while ((n = in.read(buf)) > 0) {
+			for (int i = 0; i < n; i++) {
+				byte b = buf[i];
+				if (b == ',') {
+					endValue();
+				} else if (b == '\n') {
+					endRow(lineNumber++, consumer);
+				} else if (b != '\r') {
+					if (fieldLength == field.length) {
+						field = Arrays.copyOf(field, field.length * 2);
+					}
+					field[fieldLength++] = b;
+				}
+			}
+		}
+
+		/* last line without a trailing newline */
+		if (fieldLength > 0 || fieldIndex > 0) {
+			endRow(lineNumber, consumer);
+		}
+	}
+
+	private void startRow() {
+		nvalues = 0;
+		fieldLength = 0;
+		fieldIndex = 0;
+		error = null;
+	}
+
+	private void endValue() {
+		if (fieldIndex == 0 && fieldLength == 0) {
+			/* the leading comma written by toCSVRow() */
+			fieldIndex++;
+			return;
+		}
+		if (error == null) {
+			if (!parseField()) {
+				error = "bad number in column " + fieldIndex;
+			} else {
+				if (nvalues == values.length) {
+					values = Arrays.copyOf(values, values.length * 2);
+				}
+				values[nvalues++] = parsed;
+			}
+		}
+		fieldIndex++;
+		fieldLength = 0;
+	}
+
+	private void endRow(long lineNumber, RowConsumer consumer) {
+		if (fieldIndex == 0 && fieldLength == 0) {
+			/* blank line */
+			startRow();
+			return;
+		}
+
+		if (error == null && fieldLength == 0) {
+			error = "missing label";
+		}
+		if (error == null && nvalues == 0) {
+			error = "no values";
+		}
+		if (error == null && expectedValues >= 0 && nvalues != expectedValues) {
+			error = "expected " + expectedValues + " values, found " + nvalues;
+		}
+
+		if (error != null) {
+			rowsRejected++;
+			errorHandler.malformed(lineNumber, error);
+		} else {
+			if (expectedValues < 0) {
+				expectedValues = nvalues;
+			}
+			rowsRead++;
+			consumer.row(values, nvalues, label());
+		}
+		startRow();
+	}
+
+	private String label() {
+		for (int i = 0; i < labelBytes.size(); i++) {
+			byte[] known = labelBytes.get(i);
+			if (known.length == fieldLength && rangeEquals(known, field, fieldLength)) {
+				return labels.get(i);
+			}
+		}
+		byte[] bytes = Arrays.copyOf(field, fieldLength);
+		String label = new String(bytes, StandardCharsets.UTF_8);
+		labelBytes.add(bytes);
+		labels.add(label);
+		return label;
+	}
+
+	private static boolean rangeEquals(byte[] a, byte[] b, int length) {
+		for (int i = 0; i < length; i++) {
+			if (a[i] != b[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/* parse field into parsed without allocating for the plain decimal forms Float.toString()
+	 * produces; anything else falls back to Float.parseFloat */
+	private boolean parseField() {
+		int i = 0;
+		boolean negative = false;
+		if (i < fieldLength && (field[i] == '-' || field[i] == '+')) {
+			negative = field[i] == '-';
+			i++;
+		}
+
+		long mantissa = 0;
+		int digits = 0;
+		int exponent = 0;
+		boolean seenDigit = false;
+
+		for (; i < fieldLength && field[i] >= '0' && field[i] <= '9'; i++) {
+			seenDigit = true;
+			if (digits < 18) {
+				mantissa = mantissa * 10 + (field[i] - '0');
+				if (mantissa != 0) {
+					digits++;
+				}
+			} else {
+				exponent++;
+				digits++;
+			}
+		}
+		if (i < fieldLength && field[i] == '.') {
+			for (i++; i < fieldLength && field[i] >= '0' && field[i] <= '9'; i++) {
+				seenDigit = true;
+				if (digits < 18) {
+					mantissa = mantissa * 10 + (field[i] - '0');
+					exponent--;
+					if (mantissa != 0) {
+						digits++;
+					}
+				} else {
+					digits++;
+				}
+			}
+		}
+		if (seenDigit && i < fieldLength && (field[i] == 'E' || field[i] == 'e')) {
+			i++;
+			boolean negativeExponent = false;
+			if (i < fieldLength && (field[i] == '-' || field[i] == '+')) {
+				negativeExponent = field[i] == '-';
+				i++;
+			}
+			int e = 0;
+			boolean seenExponentDigit = false;
+			for (; i < fieldLength && field[i] >= '0' && field[i] <= '9'; i++) {
+				seenExponentDigit = true;
+				e = Math.min(e * 10 + (field[i] - '0'), 100000);
+			}
+			if (!seenExponentDigit) {
+				return parseSlow();
+			}
+			exponent += negativeExponent ? -e : e;
+		}
+
+		if (!seenDigit || i != fieldLength) {
+			return parseSlow();
+		}
+		if (mantissa == 0) {
+			parsed = negative ? -0f : 0f;
+			return true;
+		}
+
+		/* mantissa and the power of ten are both exact doubles here, so the double is correctly rounded */
+		if (digits > 15 || exponent < -22 || exponent > 22) {
+			return parseSlow();
+		}
+		double d = exponent < 0 ? mantissa / POW10[-exponent] : mantissa * POW10[exponent];
+
+		/* rounding that double to float is only ambiguous when it sits exactly halfway between two floats */
+		if ((Double.doubleToRawLongBits(d) & 0x1FFFFFFFL) == 0x10000000L) {
+			return parseSlow();
+		}
+		parsed = (float) (negative ? -d : d);
+		return true;
+	}
+
+	private boolean parseSlow() {
+		try {
+			parsed = Float.parseFloat(new String(field, 0, fieldLength, StandardCharsets.ISO_8859_1));
+			return true;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+}
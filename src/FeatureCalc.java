@@ -1,3 +1,4 @@
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -6,20 +7,44 @@ import weka.core.Attribute;
 import weka.core.DenseInstance;
 import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.Utils;
 
 /* A helper class to calculate quantities in ML features */
 
-public class FeatureCalc{
+public class FeatureCalc implements Serializable {
 	
+	private static final long serialVersionUID = 1L;
 	Instances dataset;	
 	List<String> classLabels;
+	int nmeasurements;
 	int nfeatures;
 	boolean isFirstInstance = true;
+	
+	/* optional fitted stage mapping raw bins to attributes; null uses the bins as they are */
+	FeatureTransform transform;
+	
+	/* a single instance bound to the dataset header, refilled for every classification */
+	transient double[] reusableValues;
+	transient Instance reusableInstance;
+	transient float[] reusableFeatures;
 
 	public FeatureCalc(List<String> classLabels) {
 		this.classLabels = classLabels;
 	}
 	
+	/* a calculator sharing this one's dataset header, for use on another thread */
+	public FeatureCalc copy() {
+		FeatureCalc res = new FeatureCalc(classLabels);
+		res.nmeasurements = nmeasurements;
+		res.nfeatures = nfeatures;
+		res.isFirstInstance = isFirstInstance;
+		res.transform = transform;
+		if (dataset != null) {
+			res.dataset = new Instances(dataset, 0);
+		}
+		return res;
+	}
+	
 	private Instance instanceFromArray(double[] valueArray, String label) {
 		Instance instance = new DenseInstance(1.0, valueArray);
 
@@ -33,39 +58,36 @@ public class FeatureCalc{
 		return instance;
 	}
 
-	private Instance calcFirstInstance(DataInstance data) {
+	/* build the dataset (instance header) up front, instead of lazily from the first instance */
+	public void buildHeader(int nmeasurements) {
 		final ArrayList<Attribute> attrs = new ArrayList<>();
-		final ArrayList<Double> values = new ArrayList<>();
 		
 		//Yang: consider adding more features to make your demo more accurate and robust to ambient noise
 
-		nfeatures = data.measurements.length;
+		this.nmeasurements = nmeasurements;
+		nfeatures = transform == null ? nmeasurements : transform.outputSize();
 		
 		for(int i = 0; i < nfeatures; i++){
-			attrs.add(new Attribute("bin"+i, i));
-			values.add((double) data.measurements[i]);
+			attrs.add(new Attribute(transform == null ? "bin"+i : transform.attributeName(i), i));
 		}
 
-		/* build our dataset (instance header) */
 		attrs.add(new Attribute("classlabel", classLabels, nfeatures));
 		dataset = new Instances("dataset", attrs, 0);
 		dataset.setClassIndex(nfeatures);
-		
-		/* build the output instance */
-		double[] valueArray = new double[nfeatures+1];
-		for(int i=0; i<nfeatures; i++) {
-			valueArray[i] = values.get(i);
-		}
-		
-		return instanceFromArray(valueArray, data.label);
-		
+		isFirstInstance = false;
+	}
+
+	private Instance calcFirstInstance(DataInstance data) {
+		buildHeader(data.measurements.length);
+		return calcOtherInstance(data);
 	}
 
 	private Instance calcOtherInstance(DataInstance data) {
 		final double[] valueArray = new double[nfeatures+1];
+		final float[] features = newFeatures(data.measurements);
 
 		for(int i = 0; i < nfeatures; i++){
-			valueArray[i] = data.measurements[i];
+			valueArray[i] = features[i];
 		}
 		
 		return instanceFromArray(valueArray, data.label);
@@ -73,7 +95,6 @@ public class FeatureCalc{
 
 	public Instance calcFeatures(DataInstance data) {
 		if(isFirstInstance) {
-			isFirstInstance = false;
 			return calcFirstInstance(data);
 			
 		} else {
@@ -81,6 +102,89 @@ public class FeatureCalc{
 		}
 	}
 
+	/* fill the reusable instance from measurements without allocating; valid until the next call */
+	public Instance calcFeatures(float[] measurements) {
+		if(dataset == null) {
+			DataInstance data = new DataInstance();
+			data.measurements = measurements;
+			return calcFeatures(data);
+		}
+		
+		return featureInstance(features(measurements));
+	}
+	
+	/* the same for values that already went through features(), e.g. to time the stages apart */
+	public Instance featureInstance(float[] features) {
+		if(reusableInstance == null) {
+			/* DenseInstance keeps a reference to this array rather than copying it */
+			reusableValues = new double[nfeatures+1];
+			reusableInstance = new DenseInstance(1.0, reusableValues);
+			reusableInstance.setDataset(dataset);
+		}
+		
+		for(int i = 0; i < nfeatures; i++) {
+			reusableValues[i] = features[i];
+		}
+		reusableValues[nfeatures] = Utils.missingValue();
+		
+		return reusableInstance;
+	}
+	
+	/* the attribute values for measurements, in a buffer reused by the next call */
+	public float[] features(float[] measurements) {
+		if(transform == null) {
+			return measurements;
+		}
+		if(reusableFeatures == null) {
+			reusableFeatures = new float[nfeatures];
+		}
+		transform.apply(measurements, reusableFeatures);
+		return reusableFeatures;
+	}
+	
+	/* the attribute values for measurements, in an array the caller may keep */
+	public float[] newFeatures(float[] measurements) {
+		if(transform == null) {
+			return measurements;
+		}
+		float[] res = new float[transform.outputSize()];
+		transform.apply(measurements, res);
+		return res;
+	}
+
+	/* the same over a training set's per-class lists, size rows in all; a TrainingStore snapshot's
+	 * rows are read from its matrix in place, without a DataInstance each */
+	public Instances calcFeatures(Collection<List<DataInstance>> classes, int size) {
+		Instances res = new Instances(dataset, size);
+		float[] row = new float[nmeasurements];
+		for(List<DataInstance> v : classes) {
+			if(!(v instanceof TrainingStore.Rows)) {
+				for(DataInstance data : v) {
+					res.add(calcOtherInstance(data));
+				}
+				continue;
+			}
+			
+			TrainingStore.Rows rows = (TrainingStore.Rows) v;
+			for(int r = 0; r < rows.count; r++) {
+				final double[] valueArray = new double[nfeatures+1];
+				if(transform == null) {
+					for(int i = 0; i < nfeatures; i++) {
+						valueArray[i] = rows.data[r * rows.bins + i];
+					}
+				} else {
+					System.arraycopy(rows.data, r * rows.bins, row, 0, rows.bins);
+					final float[] features = features(row);
+					for(int i = 0; i < nfeatures; i++) {
+						valueArray[i] = features[i];
+					}
+				}
+				res.add(instanceFromArray(valueArray, rows.label));
+			}
+		}
+		return res;
+	}
+
 	public Instances calcFeatures(Collection<DataInstance> dataCollection) {
 		Instances res = null;
 		for(DataInstance data : dataCollection) {
@@ -0,0 +1,260 @@
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/* A compact binary training set, memory-mapped for loading
+ *
+ * Layout (little-endian):
+ *   int magic 'VIBF', int version, int bins, int rows, int nclasses
+ *   nclasses x (short length, UTF-8 bytes) class names, padded to a multiple of 4 bytes
+ *   rows x bins float32 measurements, row-major
+ *   rows x int32 class index
+ */
+
+public class FeatureStore {
+
+	static final int MAGIC = 0x56494246;
+	static final int VERSION = 1;
+
+	String[] classNames;
+	int bins;
+	int rows;
+	FloatBuffer features;
+	IntBuffer labels;
+
+	/* map a store written by write(); rows are read in place, nothing is copied per row */
+	public static FeatureStore open(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		MappedByteBuffer buf;
+		try {
+			/* one MappedByteBuffer covers at most 2 GB */
+			if (raf.length() > Integer.MAX_VALUE) {
+				throw new IOException(file + " is " + raf.length() + " bytes, too large to map");
+			}
+			buf = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		} finally {
+			raf.close();
+		}
+		buf.order(ByteOrder.LITTLE_ENDIAN);
+
+		if (buf.getInt() != MAGIC) {
+			throw new IOException(file + " is not a feature store");
+		}
+		int version = buf.getInt();
+		if (version != VERSION) {
+			throw new IOException(file + " has unsupported version " + version);
+		}
+
+		FeatureStore res = new FeatureStore();
+		res.bins = buf.getInt();
+		res.rows = buf.getInt();
+		res.classNames = new String[buf.getInt()];
+		for (int i = 0; i < res.classNames.length; i++) {
+			byte[] name = new byte[buf.getShort()];
+			buf.get(name);
+			res.classNames[i] = new String(name, StandardCharsets.UTF_8);
+		}
+		buf.position(align(buf.position()));
+
+		long featureBytes = (long) res.rows * res.bins * 4;
+		if (res.rows < 0 || res.bins < 0 || buf.position() + featureBytes + (long) res.rows * 4 > buf.limit()) {
+			throw new IOException(file + " is truncated: " + res.rows + " rows of " + res.bins + " bins do not fit");
+		}
+		ByteBuffer slice = buf.slice().order(ByteOrder.LITTLE_ENDIAN);
+		slice.limit((int) featureBytes);
+		res.features = slice.asFloatBuffer();
+
+		buf.position(buf.position() + (int) featureBytes);
+		slice = buf.slice().order(ByteOrder.LITTLE_ENDIAN);
+		slice.limit(res.rows * 4);
+		res.labels = slice.asIntBuffer();
+
+		return res;
+	}
+
+	/* every label in data must be one of classNames, and every row must have the same number of bins */
+	public static void write(File file, String[] classNames, Map<String, List<DataInstance>> data) throws IOException {
+		List<String> names = Arrays.asList(classNames);
+		for (String label : data.keySet()) {
+			if (!names.contains(label)) {
+				throw new IOException("label " + label + " is not one of the class names");
+			}
+		}
+		int rows = 0;
+		int bins = -1;
+		int header = 20;
+		for (String name : classNames) {
+			List<DataInstance> v = data.get(name);
+			if (v != null) {
+				int i = 0;
+				for (DataInstance d : v) {
+					if (bins < 0) {
+						bins = d.measurements.length;
+					} else if (d.measurements.length != bins) {
+						throw new IOException("row " + i + " of " + name + " has " + d.measurements.length + " bins, the first row has " + bins);
+					}
+					i++;
+				}
+				rows += v.size();
+			}
+			/* read back as a signed short */
+			int length = name.getBytes(StandardCharsets.UTF_8).length;
+			if (length > Short.MAX_VALUE) {
+				throw new IOException("class name of " + length + " bytes is too long");
+			}
+			header += 2 + length;
+		}
+		bins = Math.max(bins, 0);
+		if ((long) rows * (bins + 1) * 4 > Integer.MAX_VALUE - (long) align(header)) {
+			throw new IOException(rows + " rows of " + bins + " bins would not fit in one mappable file");
+		}
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(0);
+			FileChannel channel = raf.getChannel();
+			ByteBuffer buf = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+
+			buf.putInt(MAGIC).putInt(VERSION).putInt(bins).putInt(rows).putInt(classNames.length);
+			for (String name : classNames) {
+				byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+				if (buf.remaining() < 2 + bytes.length) {
+					drain(channel, buf);
+				}
+				buf.putShort((short) bytes.length);
+				buf.put(bytes);
+			}
+			/* header counts file bytes, the buffer may have been drained already */
+			for (int i = header; i < align(header); i++) {
+				if (!buf.hasRemaining()) {
+					drain(channel, buf);
+				}
+				buf.put((byte) 0);
+			}
+
+			for (int c = 0; c < classNames.length; c++) {
+				List<DataInstance> v = data.get(classNames[c]);
+				if (v == null) {
+					continue;
+				}
+				for (DataInstance d : v) {
+					for (int i = 0; i < bins; i++) {
+						if (buf.remaining() < 4) {
+							drain(channel, buf);
+						}
+						buf.putFloat(d.measurements[i]);
+					}
+				}
+			}
+
+			for (int c = 0; c < classNames.length; c++) {
+				List<DataInstance> v = data.get(classNames[c]);
+				int n = v == null ? 0 : v.size();
+				for (int i = 0; i < n; i++) {
+					if (buf.remaining() < 4) {
+						drain(channel, buf);
+					}
+					buf.putInt(c);
+				}
+			}
+			drain(channel, buf);
+		} finally {
+			raf.close();
+		}
+	}
+
+	private static void drain(FileChannel channel, ByteBuffer buf) throws IOException {
+		buf.flip();
+		while (buf.hasRemaining()) {
+			channel.write(buf);
+		}
+		buf.clear();
+	}
+
+	private static int align(int position) {
+		return (position + 3) & ~3;
+	}
+
+	public int rows() {
+		return rows;
+	}
+
+	public int bins() {
+		return bins;
+	}
+
+	public float value(int row, int bin) {
+		return features.get(row * bins + bin);
+	}
+
+	/* copy one row into a caller-owned buffer */
+	public void row(int row, float[] dst) {
+		int base = row * bins;
+		for (int i = 0; i < bins; i++) {
+			dst[i] = features.get(base + i);
+		}
+	}
+
+	public int label(int row) {
+		return labels.get(row);
+	}
+
+	public String labelName(int row) {
+		return classNames[labels.get(row)];
+	}
+
+	/* materialise the rows as DataInstances for MLClassifier.train */
+	public void addTo(Map<String, List<DataInstance>> trainingData) {
+		for (int r = 0; r < rows; r++) {
+			DataInstance data = new DataInstance();
+			data.label = labelName(r);
+			data.measurements = new float[bins];
+			row(r, data.measurements);
+			trainingData.computeIfAbsent(data.label, k -> new ArrayList<>()).add(data);
+		}
+	}
+
+	public void writeCSV(File file) throws IOException {
+		Writer writer = new FileWriter(file);
+		try {
+			DataInstance data = new DataInstance();
+			data.measurements = new float[bins];
+			for (int r = 0; r < rows; r++) {
+				data.label = labelName(r);
+				row(r, data.measurements);
+				writer.write(data.toCSVRow());
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	/* convert between formats: FeatureStore in.csv out.vbf, or FeatureStore in.vbf out.csv */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.out.println("usage: FeatureStore <in.csv|in.vbf> <out.vbf|out.csv>");
+			return;
+		}
+
+		if (args[0].endsWith(".vbf")) {
+			open(new File(args[0])).writeCSV(new File(args[1]));
+		} else {
+			Map<String, List<DataInstance>> data = CsvLoader.load(args[0]);
+			write(new File(args[1]), data.keySet().toArray(new String[0]), data);
+		}
+		System.out.println("Wrote " + args[1]);
+	}
+}
@@ -0,0 +1,21 @@
+import java.io.Serializable;
+import java.util.List;
+
+/* A stage between the raw FFT bins and the attributes the classifier sees
+ *
+ * fit() is called once by MLClassifier.train and returns a fitted, immutable transform;
+ * apply() then maps every frame, during training and classification alike.
+ */
+
+public interface FeatureTransform extends Serializable {
+
+	/* learn any parameters from the training set, leaving this (unfitted) configuration untouched */
+	FeatureTransform fit(List<DataInstance> trainingData, List<String> classLabels) throws Exception;
+
+	int outputSize();
+
+	String attributeName(int index);
+
+	/* map measurements into out[0..outputSize()); must not allocate, may be called from several threads */
+	void apply(float[] measurements, float[] out);
+}
@@ -0,0 +1,257 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/* Tunes the SMO's C and kernel by stratified k-fold cross-validation, in parallel
+ *
+ * Every (candidate, fold) pair is one task on a fork-join pool, so a grid of 20 candidates
+ * with 5 folds keeps 100 trainings spread over all cores. Each candidate reports its mean
+ * and spread of fold accuracy, training time and the per-frame cost of the classify path
+ * its model would use at runtime (linear PolyKernel models compile, the rest pack their support vectors).
+ */
+
+public class HyperparameterSearch {
+
+	/* one point of the search space */
+	public static class Candidate {
+		final double c;
+		final String kernel;	// "poly" or "rbf"
+		final double exponent;
+		final double gamma;
+
+		public Candidate(double c, String kernel, double exponent, double gamma) {
+			this.c = c;
+			this.kernel = kernel;
+			this.exponent = exponent;
+			this.gamma = gamma;
+		}
+
+		/* SMO options for MLClassifier, in the form of its defaults */
+		public String options() {
+			String k = kernel.equals("rbf")
+					? "weka.classifiers.functions.supportVector.RBFKernel -C 0 -G " + gamma
+					: "weka.classifiers.functions.supportVector.PolyKernel -C 0 -E " + exponent;
+			return "-C " + c + " -L 0.0010 -P 1.0E-12 -N 0 -V -1 -W 1 -K \"" + k + "\"";
+		}
+
+		public String toString() {
+			return String.format(Locale.ROOT, kernel.equals("rbf") ? "rbf  C=%-6g G=%g" : "poly C=%-6g E=%g",
+					c, kernel.equals("rbf") ? gamma : exponent);
+		}
+	}
+
+	/* the cross-validated scores of one candidate */
+	public static class Result {
+		Candidate candidate;
+		double accuracy;
+		double accuracySpread;
+		double trainMillis;
+		double nanosPerFrame;
+		String path;
+	}
+
+	static final String[] PATHS = {"weka", "compiled", "kernel"};
+
+	int folds = 5;
+	long seed = 1;
+	ForkJoinPool pool = ForkJoinPool.commonPool();
+
+	public void setFolds(int folds) {
+		if (folds < 2) {
+			throw new IllegalArgumentException("cross-validation needs at least 2 folds, not " + folds);
+		}
+		this.folds = folds;
+	}
+
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/* C over four decades, a linear and a quadratic PolyKernel and RBF over a range of gamma */
+	public static List<Candidate> grid() {
+		List<Candidate> res = new ArrayList<>();
+		for (double c : new double[] {0.1, 1, 10, 100}) {
+			res.add(new Candidate(c, "poly", 1, 0));
+			res.add(new Candidate(c, "poly", 2, 0));
+			for (double gamma : new double[] {0.01, 0.1, 0.7}) {
+				res.add(new Candidate(c, "rbf", 0, gamma));
+			}
+		}
+		return res;
+	}
+
+	/* n candidates with C and gamma drawn log-uniformly, half of them PolyKernel */
+	public static List<Candidate> random(int n, long seed) {
+		Random random = new Random(seed);
+		List<Candidate> res = new ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			double c = Math.pow(10, -2 + 5 * random.nextDouble());
+			if (random.nextBoolean()) {
+				res.add(new Candidate(c, "poly", 1 + random.nextInt(3), 0));
+			} else {
+				res.add(new Candidate(c, "rbf", 0, Math.pow(10, -3 + 3.5 * random.nextDouble())));
+			}
+		}
+		return res;
+	}
+
+	/* the samples of each fold, stratified so each fold has about the same class balance */
+	List<List<DataInstance>> split(Map<String, List<DataInstance>> data) {
+		int total = 0;
+		for (List<DataInstance> samples : data.values()) {
+			total += samples.size();
+		}
+		/* an empty fold would score 0/0 and turn its candidate's mean into NaN */
+		if (folds > total) {
+			throw new IllegalArgumentException(folds + " folds of " + total + " samples would leave folds empty");
+		}
+		List<List<DataInstance>> res = new ArrayList<>();
+		for (int f = 0; f < folds; f++) {
+			res.add(new ArrayList<>());
+		}
+		Random random = new Random(seed);
+		int next = 0;
+		for (List<DataInstance> samples : data.values()) {
+			List<DataInstance> shuffled = new ArrayList<>(samples);
+			Collections.shuffle(shuffled, random);
+			for (DataInstance d : shuffled) {
+				res.get(next).add(d);
+				next = (next + 1) % folds;
+			}
+		}
+		return res;
+	}
+
+	class FoldTask extends RecursiveTask<double[]> {
+		private static final long serialVersionUID = 1L;
+
+		final Candidate candidate;
+		final List<List<DataInstance>> split;
+		final int fold;
+
+		FoldTask(Candidate candidate, List<List<DataInstance>> split, int fold) {
+			this.candidate = candidate;
+			this.split = split;
+			this.fold = fold;
+		}
+
+		/* accuracy, train ms, ns/frame and the classify path: 0 Weka, 1 compiled, 2 kernel model */
+		protected double[] compute() {
+			Map<String, List<DataInstance>> training = new LinkedHashMap<>();
+			for (int f = 0; f < split.size(); f++) {
+				if (f == fold) {
+					continue;
+				}
+				for (DataInstance d : split.get(f)) {
+					training.computeIfAbsent(d.label, k -> new ArrayList<>()).add(d);
+				}
+			}
+
+			MLClassifier classifier = new MLClassifier(null, candidate.options());
+			classifier.verbose = false;
+			long start = System.nanoTime();
+			if (!classifier.train(training, null)) {
+				return new double[] {0, 0, 0, 0};
+			}
+			double trainMillis = (System.nanoTime() - start) / 1e6;
+
+			List<DataInstance> test = split.get(fold);
+			int correct = 0;
+			for (DataInstance d : test) {
+				if (classifier.classify(d.measurements).equals(d.label)) {
+					correct++;
+				}
+			}
+			double nanos = nanosPerFrame(classifier, test);
+			return new double[] {(double) correct / test.size(), trainMillis, nanos, classifier.compiled != null ? 1 : classifier.kernelModel != null ? 2 : 0};
+		}
+	}
+
+	/* like ReductionReport's, but over a fixed 2000 frames, since kernel models take up to hundreds of us a frame */
+	static double nanosPerFrame(MLClassifier classifier, List<DataInstance> data) {
+		int frames = 2000;
+		for (int i = 0; i < frames; i++) {
+			classifier.classify(data.get(i % data.size()).measurements);
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < frames; i++) {
+			classifier.classify(data.get(i % data.size()).measurements);
+		}
+		return (double) (System.nanoTime() - start) / frames;
+	}
+
+	/* cross-validate every candidate, best mean accuracy first */
+	public List<Result> search(Map<String, List<DataInstance>> data, List<Candidate> candidates) {
+		List<List<DataInstance>> split = split(data);
+
+		List<FoldTask> tasks = new ArrayList<>();
+		for (Candidate candidate : candidates) {
+			for (int f = 0; f < folds; f++) {
+				tasks.add(new FoldTask(candidate, split, f));
+			}
+		}
+		pool.invoke(new RecursiveTask<Void>() {
+			protected Void compute() {
+				ForkJoinTask.invokeAll(tasks);
+				return null;
+			}
+		});
+
+		List<Result> res = new ArrayList<>();
+		for (int i = 0; i < candidates.size(); i++) {
+			Result r = new Result();
+			r.candidate = candidates.get(i);
+			double sum = 0, sumSquares = 0;
+			for (int f = 0; f < folds; f++) {
+				double[] scores = tasks.get(i * folds + f).join();
+				sum += scores[0];
+				sumSquares += scores[0] * scores[0];
+				r.trainMillis += scores[1] / folds;
+				r.nanosPerFrame += scores[2] / folds;
+				r.path = PATHS[(int) scores[3]];
+			}
+			r.accuracy = sum / folds;
+			r.accuracySpread = Math.sqrt(Math.max(0, sumSquares / folds - r.accuracy * r.accuracy));
+			res.add(r);
+		}
+		/* on a tie the cheaper model wins, e.g. a compiled linear one over an RBF */
+		res.sort((a, b) -> a.accuracy != b.accuracy ? Double.compare(b.accuracy, a.accuracy)
+				: Double.compare(a.nanosPerFrame, b.nanosPerFrame));
+		return res;
+	}
+
+	public static void print(List<Result> results) {
+		System.out.printf("%-28s %16s %10s %12s  %s%n", "candidate", "accuracy", "train ms", "ns/frame", "path");
+		for (Result r : results) {
+			System.out.printf(Locale.ROOT, "%-28s %7.1f%% +- %4.1f%% %10.0f %12.0f  %s%n",
+					r.candidate, 100 * r.accuracy, 100 * r.accuracySpread, r.trainMillis, r.nanosPerFrame,
+					r.path);
+		}
+	}
+
+	/* HyperparameterSearch [train.csv] [folds] [grid | random N] */
+	public static void main(String[] args) throws Exception {
+		String trainFileName = args.length > 0 ? args[0] : "test.csv";
+		HyperparameterSearch search = new HyperparameterSearch();
+		if (args.length > 1) {
+			search.setFolds(Integer.parseInt(args[1]));
+		}
+		List<Candidate> candidates = args.length > 3 && args[2].equals("random")
+				? random(Integer.parseInt(args[3]), 1) : grid();
+
+		Map<String, List<DataInstance>> data = CsvLoader.load(trainFileName);
+		long start = System.nanoTime();
+		List<Result> results = search.search(data, candidates);
+		print(results);
+		System.out.printf("%d candidates x %d folds in %.1f s on %d threads%n", candidates.size(), search.folds,
+				(System.nanoTime() - start) / 1e9, search.pool.getParallelism());
+		System.out.println("Best: new MLClassifier(null, \"" + results.get(0).candidate.options().replace("\"", "\\\"") + "\")");
+	}
+}
@@ -0,0 +1,65 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import weka.attributeSelection.InfoGainAttributeEval;
+import weka.core.Instances;
+
+/* Keeps the FFT bins with the highest information gain about the class label */
+
+public class InfoGainSelection implements FeatureTransform {
+
+	private static final long serialVersionUID = 1L;
+
+	int nselected;
+	int[] selected;
+
+	public InfoGainSelection(int nselected) {
+		this.nselected = nselected;
+	}
+
+	public FeatureTransform fit(List<DataInstance> trainingData, List<String> classLabels) throws Exception {
+		FeatureCalc featureCalc = new FeatureCalc(new ArrayList<>(classLabels));
+		Instances data = featureCalc.calcFeatures(trainingData);
+
+		InfoGainAttributeEval eval = new InfoGainAttributeEval();
+		eval.buildEvaluator(data);
+
+		int nbins = featureCalc.nfeatures;
+		Integer[] order = new Integer[nbins];
+		double[] merit = new double[nbins];
+		for (int i = 0; i < nbins; i++) {
+			order[i] = i;
+			merit[i] = eval.evaluateAttribute(i);
+		}
+		Arrays.sort(order, (a, b) -> Double.compare(merit[b], merit[a]));
+
+		InfoGainSelection res = new InfoGainSelection(Math.min(nselected, nbins));
+		res.selected = new int[res.nselected];
+		for (int i = 0; i < res.nselected; i++) {
+			res.selected[i] = order[i];
+		}
+
+		/* keep the selected bins in frequency order */
+		Arrays.sort(res.selected);
+		return res;
+	}
+
+	public int outputSize() {
+		return nselected;
+	}
+
+	public String attributeName(int index) {
+		return "bin" + selected[index];
+	}
+
+	public void apply(float[] measurements, float[] out) {
+		for (int i = 0; i < nselected; i++) {
+			out[i] = measurements[selected[i]];
+		}
+	}
+
+	public String toString() {
+		return "InfoGainSelection(" + nselected + ")";
+	}
+}
@@ -0,0 +1,371 @@
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import weka.classifiers.functions.SMO;
+import weka.classifiers.functions.supportVector.Kernel;
+import weka.classifiers.functions.supportVector.PolyKernel;
+import weka.classifiers.functions.supportVector.RBFKernel;
+import weka.classifiers.functions.supportVector.SMOset;
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.filters.unsupervised.attribute.Normalize;
+
+/* A trained SMO with a PolyKernel or RBFKernel, evaluated without Weka
+ *
+ * Each pairwise SVM is sum over its support vectors of alpha * y * K(x, sv) - b, on the
+ * normalised features. The support vectors of all pairs are packed into one float matrix,
+ * each distinct vector once: a sample of class i is a support vector of several pairs (i, j),
+ * so K(x, sv) is computed once per frame and reused by every pair that needs it. Votes are
+ * tallied exactly as SMO.distributionForInstance does.
+ *
+ * Weka keeps the support vectors in protected fields, so compile() reads them by reflection.
+ */
+
+public class KernelModel implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	static final int POLY = 0;
+	static final int RBF = 1;
+
+	String[] classNames;
+	int nfeatures;
+	int kernel;
+	double exponent;
+	boolean lowerOrder;
+	double gamma;
+
+	/* normalisation, as Weka's Normalize applies it before the kernel */
+	float[] min;
+	float[] scale;
+
+	/* [vector][feature], row-major, and each vector's dot product with itself */
+	float[] vectors;
+	int nvectors;
+	double[] norms;
+
+	/* pair p is pairFirst[p] vs pairSecond[p], its terms are terms[start[p]] .. terms[start[p + 1] - 1] */
+	int[] pairFirst;
+	int[] pairSecond;
+	double[] bias;
+	int[] start;
+	int[] terms;
+	double[] coefficients;
+
+	/* per-thread scratch space for classify() */
+	public class Buffers {
+		final float[] normalized = new float[nfeatures];
+		final double[] kernelValues = new double[nvectors];
+		final int[] votes = new int[classNames.length];
+	}
+
+	/* returns null if the SMO has a linear or an unsupported kernel, or could not be read */
+	public static KernelModel compile(SMO smo, Normalize normalize, Attribute classattr) {
+		try {
+			Object[][] binary = (Object[][]) field(SMO.class, "m_classifiers").get(smo);
+			Class<?> binaryClass = binary.getClass().getComponentType().getComponentType();
+			Field alphaField = field(binaryClass, "m_alpha");
+			Field bField = field(binaryClass, "m_b");
+			Field classField = field(binaryClass, "m_class");
+			Field dataField = field(binaryClass, "m_data");
+			Field supportField = field(binaryClass, "m_supportVectors");
+
+			KernelModel res = new KernelModel();
+			Kernel kernel = smo.getKernel();
+			if (kernel.getClass() == PolyKernel.class && ((PolyKernel) kernel).getExponent() != 1.0) {
+				res.kernel = POLY;
+				res.exponent = ((PolyKernel) kernel).getExponent();
+				res.lowerOrder = ((PolyKernel) kernel).getUseLowerOrder();
+			} else if (kernel.getClass() == RBFKernel.class) {
+				res.kernel = RBF;
+				res.gamma = ((RBFKernel) kernel).getGamma();
+			} else {
+				return null;
+			}
+
+			int nclasses = classattr.numValues();
+			res.nfeatures = classattr.index();
+			res.classNames = new String[nclasses];
+			for (int i = 0; i < nclasses; i++) {
+				res.classNames[i] = classattr.value(i);
+			}
+			double[] min = normalize.getMinArray();
+			double[] max = normalize.getMaxArray();
+			res.min = new float[res.nfeatures];
+			res.scale = new float[res.nfeatures];
+			for (int k = 0; k < res.nfeatures; k++) {
+				double range = max[k] - min[k];
+				if (!Double.isNaN(min[k]) && range != 0) {
+					res.min[k] = (float) min[k];
+					res.scale[k] = (float) (1 / range);
+				}
+			}
+
+			Map<Row, Integer> index = new HashMap<>();
+			List<float[]> vectors = new ArrayList<>();
+			List<int[]> pairs = new ArrayList<>();
+			List<Double> bias = new ArrayList<>();
+			List<Integer> terms = new ArrayList<>();
+			List<Double> coefficients = new ArrayList<>();
+			List<Integer> start = new ArrayList<>();
+
+			for (int i = 0; i < nclasses; i++) {
+				for (int j = i + 1; j < nclasses; j++) {
+					Object pair = binary[i][j];
+					double[] alpha = pair == null ? null : (double[]) alphaField.get(pair);
+					if (alpha == null) {
+						/* a pair that was never trained, SMO does not vote on it either */
+						continue;
+					}
+
+					double[] y = (double[]) classField.get(pair);
+					Instances data = (Instances) dataField.get(pair);
+					SMOset support = (SMOset) supportField.get(pair);
+
+					pairs.add(new int[] {i, j});
+					bias.add(bField.getDouble(pair));
+					start.add(terms.size());
+					for (int s = support.getNext(-1); s != -1; s = support.getNext(s)) {
+						float[] v = new float[res.nfeatures];
+						for (int k = 0; k < res.nfeatures; k++) {
+							v[k] = (float) data.instance(s).value(k);
+						}
+						Integer id = index.get(new Row(v));
+						if (id == null) {
+							id = vectors.size();
+							index.put(new Row(v), id);
+							vectors.add(v);
+						}
+						terms.add(id);
+						coefficients.add(y[s] * alpha[s]);
+					}
+				}
+			}
+			if (pairs.isEmpty()) {
+				return null;
+			}
+
+			res.nvectors = vectors.size();
+			res.vectors = new float[res.nvectors * res.nfeatures];
+			res.norms = new double[res.nvectors];
+			for (int v = 0; v < res.nvectors; v++) {
+				System.arraycopy(vectors.get(v), 0, res.vectors, v * res.nfeatures, res.nfeatures);
+				res.norms[v] = res.dot(vectors.get(v), v);
+			}
+
+			int npairs = pairs.size();
+			res.pairFirst = new int[npairs];
+			res.pairSecond = new int[npairs];
+			res.bias = new double[npairs];
+			res.start = new int[npairs + 1];
+			for (int p = 0; p < npairs; p++) {
+				res.pairFirst[p] = pairs.get(p)[0];
+				res.pairSecond[p] = pairs.get(p)[1];
+				res.bias[p] = bias.get(p);
+				res.start[p] = start.get(p);
+			}
+			res.start[npairs] = terms.size();
+			res.terms = new int[terms.size()];
+			res.coefficients = new double[terms.size()];
+			for (int t = 0; t < res.terms.length; t++) {
+				res.terms[t] = terms.get(t);
+				res.coefficients[t] = coefficients.get(t);
+			}
+			return res;
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			/* another Weka version; the model still classifies through Weka */
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	private static Field field(Class<?> c, String name) throws NoSuchFieldException {
+		Field res = c.getDeclaredField(name);
+		res.setAccessible(true);
+		return res;
+	}
+
+	/* a support vector as a map key, equal by content */
+	private static class Row {
+		final float[] values;
+		final int hash;
+
+		Row(float[] values) {
+			this.values = values;
+			this.hash = Arrays.hashCode(values);
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+
+		public boolean equals(Object o) {
+			return o instanceof Row && Arrays.equals(values, ((Row) o).values);
+		}
+	}
+
+	public Buffers buffers() {
+		return new Buffers();
+	}
+
+	/* index into classNames of the winning class, with the pairwise votes left in votes */
+	public int classify(float[] x, int[] votes, Buffers buffers) {
+		float[] xn = buffers.normalized;
+		for (int k = 0; k < nfeatures; k++) {
+			xn[k] = (x[k] - min[k]) * scale[k];
+		}
+		double xx = dot(xn, xn, 0);
+
+		double[] values = buffers.kernelValues;
+		for (int v = 0; v < nvectors; v++) {
+			double d = dot(xn, v);
+			if (kernel == RBF) {
+				values[v] = Math.exp(gamma * (2 * d - xx - norms[v]));
+			} else {
+				values[v] = Math.pow(lowerOrder ? d + 1 : d, exponent);
+			}
+		}
+
+		for (int c = 0; c < votes.length; c++) {
+			votes[c] = 0;
+		}
+		for (int p = 0; p < pairFirst.length; p++) {
+			double output = 0;
+			for (int t = start[p]; t < start[p + 1]; t++) {
+				output += coefficients[t] * values[terms[t]];
+			}
+			if (output - bias[p] > 0) {
+				votes[pairSecond[p]]++;
+			} else {
+				votes[pairFirst[p]]++;
+			}
+		}
+
+		/* ties go to the lower index, like weka.core.Utils.maxIndex */
+		int best = 0;
+		for (int c = 1; c < votes.length; c++) {
+			if (votes[c] > votes[best]) {
+				best = c;
+			}
+		}
+		return best;
+	}
+
+	/* allocates its buffers, for occasional calls; use classify(x, votes, buffers) per frame */
+	public String classifyLabel(float[] x) {
+		Buffers buffers = buffers();
+		return classNames[classify(x, buffers.votes, buffers)];
+	}
+
+	private double dot(float[] x, int vector) {
+		return DOT.dot(x, vectors, vector * nfeatures, nfeatures);
+	}
+
+	private double dot(float[] x, float[] w, int offset) {
+		return DOT.dot(x, w, offset, nfeatures);
+	}
+
+	/* the dot product of x with n values of w from offset, accumulated in double like Weka's dotProd */
+	interface Dot {
+		double dot(float[] x, float[] w, int offset, int n);
+	}
+
+	/* VectorDot is built from src-vector/ on JDK 16+ and needs --add-modules jdk.incubator.vector
+	 * at runtime; on any other JVM loading it fails and the scalar loop is used */
+	static final Dot DOT = loadDot();
+
+	private static Dot loadDot() {
+		try {
+			return (Dot) Class.forName("VectorDot").newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			return new ScalarDot();
+		}
+	}
+
+	static class ScalarDot implements Dot {
+		/* eight independent sums so the adds pipeline; each product is widened first, exact in double */
+		public double dot(float[] x, float[] w, int offset, int n) {
+			double s0 = 0, s1 = 0, s2 = 0, s3 = 0, s4 = 0, s5 = 0, s6 = 0, s7 = 0;
+			int k = 0;
+			for (; k + 7 < n; k += 8) {
+				int o = offset + k;
+				s0 += (double) x[k] * w[o];
+				s1 += (double) x[k + 1] * w[o + 1];
+				s2 += (double) x[k + 2] * w[o + 2];
+				s3 += (double) x[k + 3] * w[o + 3];
+				s4 += (double) x[k + 4] * w[o + 4];
+				s5 += (double) x[k + 5] * w[o + 5];
+				s6 += (double) x[k + 6] * w[o + 6];
+				s7 += (double) x[k + 7] * w[o + 7];
+			}
+			for (; k < n; k++) {
+				s0 += (double) x[k] * w[offset + k];
+			}
+			return ((s0 + s1) + (s2 + s3)) + ((s4 + s5) + (s6 + s7));
+		}
+	}
+
+	/* train an RBF and a quadratic SMO on one CSV file and check them against Weka on each file given */
+	public static void main(String[] args) throws Exception {
+		String trainFileName = args.length > 0 ? args[0] : "test.csv";
+		Map<String, List<DataInstance>> trainingData = CsvLoader.load(trainFileName);
+		String[] fileNames = args.length > 1 ? Arrays.copyOfRange(args, 1, args.length)
+				: new String[] {"test.csv", "Robust_Test_Set.csv"};
+
+		HyperparameterSearch.Candidate[] candidates = {
+			new HyperparameterSearch.Candidate(10, "rbf", 0, 0.7),
+			new HyperparameterSearch.Candidate(100, "poly", 2, 0),
+		};
+		for (HyperparameterSearch.Candidate candidate : candidates) {
+			MLClassifier classifier = new MLClassifier(null, candidate.options());
+			classifier.verbose = false;
+			classifier.train(trainingData);
+			KernelModel model = classifier.kernelModel;
+			if (model == null) {
+				System.out.println(candidate + ": no kernel model");
+				continue;
+			}
+			System.out.printf("%s: %d support vectors in %d pairs, %d distinct, %s%n",
+					candidate, model.terms.length, model.pairFirst.length, model.nvectors, DOT.getClass().getName());
+
+			Buffers buffers = model.buffers();
+			for (String fileName : fileNames) {
+				List<DataInstance> data = new ArrayList<>();
+				for (List<DataInstance> v : CsvLoader.load(fileName).values()) {
+					data.addAll(v);
+				}
+
+				int agree = 0;
+				long wekaNanos = 0;
+				long kernelNanos = 0;
+				for (int round = 0; round < 5; round++) {
+					wekaNanos = 0;
+					kernelNanos = 0;
+					agree = 0;
+					for (DataInstance d : data) {
+						long t0 = System.nanoTime();
+						String weka = classifier.classifyWeka(d.measurements);
+						long t1 = System.nanoTime();
+						float[] features = classifier.features(d.measurements);
+						String fast = model.classNames[model.classify(features, buffers.votes, buffers)];
+						long t2 = System.nanoTime();
+
+						wekaNanos += t1 - t0;
+						kernelNanos += t2 - t1;
+						if (weka.equals(fast)) {
+							agree++;
+						}
+					}
+				}
+
+				System.out.printf("  %s: %d/%d frames agree with Weka, %.0f ns/frame Weka, %.0f ns/frame packed%n",
+						fileName, agree, data.size(), (double) wekaNanos / data.size(), (double) kernelNanos / data.size());
+			}
+		}
+	}
+}
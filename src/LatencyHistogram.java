@@ -0,0 +1,109 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/* A fixed-size histogram of nanosecond latencies, safe to record into from any thread
+ *
+ * Values below 16 ns get a bucket each; above that every power of two is split into 8
+ * buckets, so a reported percentile is at most 12.5% above the true value. Recording is
+ * one bucket increment and allocates nothing.
+ */
+
+public class LatencyHistogram {
+
+	static final int SUB_BITS = 3;
+	static final int SUB = 1 << SUB_BITS;
+	static final int LINEAR = 2 * SUB;
+
+	/* up to 2^40 ns, about 18 minutes; anything slower lands in the last bucket */
+	static final int BUCKETS = LINEAR + (40 - 4) * SUB;
+
+	final String name;
+	final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	final AtomicLong total = new AtomicLong();
+	final AtomicLong max = new AtomicLong();
+
+	public LatencyHistogram(String name) {
+		this.name = name;
+	}
+
+	public void record(long nanos) {
+		counts.incrementAndGet(index(nanos));
+		total.addAndGet(nanos);
+		long m = max.get();
+		while (nanos > m && !max.compareAndSet(m, nanos)) {
+			m = max.get();
+		}
+	}
+
+	/* record the time since start, as returned by System.nanoTime(); returns the current time */
+	public long recordSince(long start) {
+		long now = System.nanoTime();
+		record(now - start);
+		return now;
+	}
+
+	static int index(long nanos) {
+		if (nanos < LINEAR) {
+			return nanos < 0 ? 0 : (int) nanos;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		int index = LINEAR + (exponent - 4) * SUB + (int) ((nanos >>> (exponent - SUB_BITS)) & (SUB - 1));
+		return Math.min(index, BUCKETS - 1);
+	}
+
+	/* the largest value that falls into bucket index */
+	static long upperBound(int index) {
+		if (index < LINEAR) {
+			return index;
+		}
+		int exponent = (index - LINEAR) / SUB + 4;
+		int sub = (index - LINEAR) % SUB;
+		return ((long) (SUB + sub + 1) << (exponent - SUB_BITS)) - 1;
+	}
+
+	/* take everything recorded since the last snapshot and start a new interval */
+	public Snapshot snapshotAndReset() {
+		long[] window = new long[BUCKETS];
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			window[i] = counts.getAndSet(i, 0);
+			count += window[i];
+		}
+		return new Snapshot(name, window, count, total.getAndSet(0), max.getAndSet(0));
+	}
+
+	/* the statistics of one interval; immutable, so it can be handed to the render thread */
+	public static class Snapshot {
+		final String name;
+		final long count;
+		final double mean;
+		final long p50;
+		final long p99;
+		final long max;
+
+		Snapshot(String name, long[] window, long count, long total, long max) {
+			this.name = name;
+			this.count = count;
+			this.mean = count == 0 ? 0 : (double) total / count;
+			/* bucket upper bounds can overshoot the largest value actually seen */
+			this.p50 = Math.min(max, percentile(window, count, 0.50));
+			this.p99 = Math.min(max, percentile(window, count, 0.99));
+			this.max = max;
+		}
+
+		private static long percentile(long[] window, long count, double p) {
+			if (count == 0) {
+				return 0;
+			}
+			long rank = Math.max(1, (long) Math.ceil(p * count));
+			long seen = 0;
+			for (int i = 0; i < window.length; i++) {
+				seen += window[i];
+				if (seen >= rank) {
+					return upperBound(i);
+				}
+			}
+			return upperBound(window.length - 1);
+		}
+	}
+}
@@ -0,0 +1,62 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/* An Actuator that keeps what it was sent, for running and testing without the board
+ *
+ * writeMillis makes every write take that long, like a slow device; failWrites makes the
+ * next writes fail and failOpens the next opens, to exercise reconnecting.
+ */
+
+public class LoopbackActuator implements Actuator {
+
+	final List<byte[]> sent = new ArrayList<>();
+	long writeMillis = 0;
+	int failWrites = 0;
+	int failOpens = 0;
+	boolean open = false;
+	int opens = 0;
+
+	public synchronized void open() throws IOException {
+		opens++;
+		if (failOpens > 0) {
+			failOpens--;
+			throw new IOException("simulated missing port");
+		}
+		open = true;
+	}
+
+	public synchronized boolean isOpen() {
+		return open;
+	}
+
+	public void write(byte[] message) throws IOException {
+		if (writeMillis > 0) {
+			try {
+				Thread.sleep(writeMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("interrupted");
+			}
+		}
+		synchronized (this) {
+			if (!open) {
+				throw new IOException("not open");
+			}
+			if (failWrites > 0) {
+				failWrites--;
+				open = false;
+				throw new IOException("simulated disconnect");
+			}
+			sent.add(message.clone());
+		}
+	}
+
+	public synchronized void close() {
+		open = false;
+	}
+
+	public synchronized List<byte[]> sent() {
+		return new ArrayList<>(sent);
+	}
+}
@@ -1,49 +1,150 @@
+import java.io.Serializable;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.RandomAccess;
 
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
 import weka.classifiers.functions.SMO;
 import weka.core.Attribute;
 import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.SerializationHelper;
 import weka.filters.Filter;
 import weka.filters.unsupervised.attribute.Normalize;
 
 /* A wrapper class to use Weka's classifiers */
 
-public class MLClassifier {
+public class MLClassifier implements Serializable {
+	private static final long serialVersionUID = 1L;
 	FeatureCalc featureCalc = null;
-    SMO classifier = null;
+    Classifier classifier = null;
     Attribute classattr;
     Filter filter = new Normalize();
+    volatile CompiledModel compiled = null;
+    KernelModel kernelModel = null;
+    transient KernelModel.Buffers kernelBuffers;
+    int[] votes;
+    transient float lastConfidence;
+    
+    /* online learning: samples that can still be support vectors, and samples added since training */
+    List<DataInstance> retained = new ArrayList<>();
+    List<DataInstance> pending = new ArrayList<>();
+    int foldBatchSize = 20;
+    double onlineC = 1.0;
+    
+    /* unfitted reduction stage, fitted on every train(); null classifies the raw bins */
+    FeatureTransform transform = null;
+    
+    /* the Weka classifier train() builds and its options; SMO with a linear PolyKernel (-E 1.0)
+     * compiles to a CompiledModel, with another PolyKernel or an RBFKernel to a KernelModel,
+     * every other model classifies through Weka */
+    static final String DEFAULT_ALGORITHM = "weka.classifiers.functions.SMO";
+    static final String DEFAULT_OPTIONS = "-C 1.0 -L 0.0010 "
+	         + "-P 1.0E-12 -N 0 -V -1 -W 1 "
+	         + "-K \"weka.classifiers.functions.supportVector.PolyKernel "
+	         + "-C 0 -E 1.0\"";
+    String algorithm = DEFAULT_ALGORITHM;
+    String options = DEFAULT_OPTIONS;
+    boolean verbose = true;
 
     public MLClassifier() {
     	
     }
 
+    public MLClassifier(FeatureTransform transform) {
+    	this.transform = transform;
+    }
+
+    public MLClassifier(FeatureTransform transform, String options) {
+    	this.transform = transform;
+    	this.options = options;
+    }
+
+    /* any Weka classifier by class name, e.g. weka.classifiers.trees.RandomForest; null options for its defaults */
+    public MLClassifier(FeatureTransform transform, String algorithm, String options) {
+    	this.transform = transform;
+    	this.algorithm = algorithm;
+    	this.options = options;
+    }
+    
+    /* an untrained classifier with the same configuration */
+    public MLClassifier emptyCopy() {
+    	MLClassifier res = new MLClassifier(transform, algorithm, options);
+    	res.verbose = verbose;
+    	return res;
+    }
+    
+    /* SMO options as on Weka's command line, e.g. from HyperparameterSearch */
+    public void setOptions(String options) {
+    	this.options = options;
+    }
+    
+    public void setAlgorithm(String algorithm, String options) {
+    	this.algorithm = algorithm;
+    	this.options = options;
+    }
+    
+    /* the classifier's class name without its package, e.g. SMO */
+    public String algorithmName() {
+    	String name = algorithm == null ? DEFAULT_ALGORITHM : algorithm;
+    	return name.substring(name.lastIndexOf('.') + 1);
+    }
+
+    /* receives training progress; training stops at the next stage once cancelled() returns true */
+    public interface Progress {
+    	void stage(String name, double fraction);
+    	boolean cancelled();
+    }
+
     public void train(Map<String, List<DataInstance>> instances) {
+    	train(instances, null);
+    }
+
+    /* returns true if a model was built, false if training failed or was cancelled */
+    public boolean train(Map<String, List<DataInstance>> instances, Progress progress) {
     	
     	/* generate instances using the collected map of DataInstances */
+    	report(progress, "Computing features", 0.0);
     	
     	/* pass on labels */
     	featureCalc = new FeatureCalc(new ArrayList<>(instances.keySet()));
     	
-    	/* pass on data */
-    	List<DataInstance> trainingData = new ArrayList<>();
-    	 
-    	for(List<DataInstance> v : instances.values()) {
-    		trainingData.addAll(v);
+    	/* pass on data, read in place rather than copied into one list */
+    	Joined trainingData = new Joined(instances.values());
+    	if(trainingData.isEmpty()) {
+    		return false;
     	}
+    	
+    	if(transform != null) {
+    		report(progress, "Fitting " + transform, 0.0);
+    		try {
+    			featureCalc.transform = transform.fit(trainingData, featureCalc.classLabels);
+    		} catch (Exception e) {
+    			e.printStackTrace();
+    			return false;
+    		}
+    	}
+    	featureCalc.buildHeader(trainingData.get(0).measurements.length);
          
     	/* prepare the training dataset */
-    	Instances dataset = featureCalc.calcFeatures(trainingData);
+    	Instances dataset = featureCalc.calcFeatures(instances.values(), trainingData.size());
+    	if(dataset == null || isCancelled(progress)) {
+    		return false;
+    	}
          
     	/* call build classifier */
-    	classifier = new SMO();
+    	report(progress, "Training " + algorithmName(), 0.1);
          
          try {
         	 
         	 // Yang: RBFKernel requires tuning but might perform better than PolyKernel
+        	 // (HyperparameterSearch does the tuning; pass the options it reports to the constructor)
         	 
         	 /* 
 			classifier.setOptions(weka.core.Utils.splitOptions("-C 1.0 -L 0.0010 "
@@ -53,28 +154,148 @@ public class MLClassifier {
 			         */
 			         
         	
-        	classifier.setOptions(weka.core.Utils.splitOptions("-C 1.0 -L 0.0010 "
-			         + "-P 1.0E-12 -N 0 -V -1 -W 1 "
-			         + "-K \"weka.classifiers.functions.supportVector.PolyKernel "
-			         + "-C 0 -E 1.0\""));
+        	if(algorithm == null || algorithm.equals(DEFAULT_ALGORITHM)) {
+        		classifier = AbstractClassifier.forName(DEFAULT_ALGORITHM,
+        				weka.core.Utils.splitOptions(options == null ? DEFAULT_OPTIONS : options));
+        	} else {
+        		classifier = AbstractClassifier.forName(algorithm,
+        				options == null ? new String[0] : weka.core.Utils.splitOptions(options));
+        	}
 			
 			classifier.buildClassifier(dataset);
 			this.classattr = dataset.classAttribute();
+			if(isCancelled(progress)) {
+				return false;
+			}
+			
+			report(progress, "Compiling", 0.9);
+			/* the same min/max normalisation SMO applies internally, needed to compile the model */
+			filter.setInputFormat(dataset);
+			Filter.useFilter(dataset, filter);
+			compiled = classifier instanceof SMO ? CompiledModel.compile((SMO) classifier, (Normalize) filter, classattr) : null;
+			kernelModel = classifier instanceof SMO && compiled == null ? KernelModel.compile((SMO) classifier, (Normalize) filter, classattr) : null;
+			kernelBuffers = null;
+			votes = new int[classattr.numValues()];
+			retained = marginSamples(trainingData);
 			
-			System.out.println("Training done!");
+			report(progress, "Done", 1.0);
+			if(verbose) {
+				System.out.println("Training done!");
+			}
+			return true;
 			
 		} catch (Exception e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
+			return false;
 		}
     }
 
+    private static void report(Progress progress, String stage, double fraction) {
+    	if(progress != null) {
+    		progress.stage(stage, fraction);
+    	}
+    }
+
+    private static boolean isCancelled(Progress progress) {
+    	return progress != null && progress.cancelled();
+    }
+
     public String classify(DataInstance data) {
+        return classify(data.measurements);
+    }
+    
+    /* allocates nothing per call once the model is compiled */
+    public String classify(float[] measurements) {
+        if(classifier == null || classattr == null) {
+            return "Unknown";
+        }
+        
+        return classifyFeatures(featureCalc.features(measurements));
+    }
+    
+    /* the attribute values classify() would use, in a buffer reused by the next call */
+    public float[] features(float[] measurements) {
+        if(featureCalc == null) {
+            return measurements;
+        }
+        return featureCalc.features(measurements);
+    }
+    
+    /* the second half of classify(), on the output of features() */
+    public String classifyFeatures(float[] features) {
+        if(classifier == null || classattr == null) {
+            return "Unknown";
+        }
+        
+        int result = classifyFeaturesIndex(features);
+        return result < 0 ? "Error" : classattr.value(result);
+    }
+    
+    /* the class as an index into classNames(), or -1; also sets lastConfidence */
+    public int classifyIndex(float[] measurements) {
+        return classifyFeaturesIndex(features(measurements));
+    }
+    
+    public int classifyFeaturesIndex(float[] features) {
+        if(classifier == null || classattr == null) {
+            return -1;
+        }
+        
+        /* linear models skip Weka entirely */
+        CompiledModel model = compiled;
+        if(model != null) {
+        	int result = model.classify(features, votes);
+        	/* the share of its pairwise contests the winner won */
+        	lastConfidence = votes.length > 1 ? (float) votes[result] / (votes.length - 1) : 1;
+        	return result;
+        }
+        
+        /* non-linear SMOs evaluate their packed support vectors */
+        if(kernelModel != null) {
+        	if(kernelBuffers == null) {
+        		kernelBuffers = kernelModel.buffers();
+        	}
+        	int result = kernelModel.classify(features, votes, kernelBuffers);
+        	lastConfidence = votes.length > 1 ? (float) votes[result] / (votes.length - 1) : 1;
+        	return result;
+        }
+        
+        try {
+            double[] distribution = classifier.distributionForInstance(featureCalc.featureInstance(features));
+            int result = weka.core.Utils.maxIndex(distribution);
+            lastConfidence = (float) distribution[result];
+            return result;
+        } catch(Exception e) {
+            e.printStackTrace();
+            return -1;
+        }
+    }
+    
+    /* the confidence in [0, 1] of the last classification on this copy */
+    public float lastConfidence() {
+        return lastConfidence;
+    }
+    
+    /* class names in the order of the indices classifyIndex returns; empty until trained */
+    public String[] classNames() {
+        if(classattr == null) {
+            return new String[0];
+        }
+        String[] res = new String[classattr.numValues()];
+        for(int i = 0; i < res.length; i++) {
+            res[i] = classattr.value(i);
+        }
+        return res;
+    }
+    
+    /* classify through Weka even when a compiled model is available, e.g. to check it */
+    public String classifyWeka(float[] measurements) {
         if(classifier == null || classattr == null) {
             return "Unknown";
         }
         
-        Instance instance = featureCalc.calcFeatures(data);
+        Instance instance = featureCalc.calcFeatures(measurements);
         
         try {
             int result = (int) classifier.classifyInstance(instance);
@@ -85,7 +306,153 @@ public class MLClassifier {
         }
     }
     
-    public void addData(double[] valueArray, String label) {
+    /* an independent deep copy of the trained model, so several threads can classify at once */
+    public MLClassifier copy() throws Exception {
+    	MLClassifier res = emptyCopy();
+    	if (classifier != null) {
+    		res.featureCalc = featureCalc.copy();
+    		res.classifier = AbstractClassifier.makeCopy(classifier);
+    		res.classattr = classattr;
+    		res.filter = filter;
+    		res.compiled = compiled;
+    		res.kernelModel = kernelModel;
+    		res.votes = new int[classattr.numValues()];
+    		res.retained = retained;
+    	}
+    	return res;
+    }
+    
+    /* write the complete trained state: Weka model, normalisation, class attribute, feature header and compiled form */
+    public void save(String fileName) throws Exception {
+    	SerializationHelper.write(fileName, this);
+    }
+    
+    public static MLClassifier load(String fileName) throws Exception {
+    	return (MLClassifier) SerializationHelper.read(fileName);
+    }
+    
+    /* run the classify path until it is compiled by the JIT and its lazy buffers exist */
+    public void warmUp(int iterations) {
+    	if(featureCalc == null || featureCalc.dataset == null) {
+    		return;
+    	}
+    	
+    	float[] frame = new float[featureCalc.nmeasurements];
+    	Random random = new Random(0);
+    	for(int i = 0; i < iterations; i++) {
+    		for(int j = 0; j < frame.length; j++) {
+    			frame[j] = random.nextFloat() * 1e-3f;
+    		}
+    		classify(frame);
+    	}
+    }
+    
+    /* a training set's per-class lists end to end, without copying them into one */
+    static class Joined extends AbstractList<DataInstance> implements RandomAccess, Serializable {
+    	private static final long serialVersionUID = 1L;
     	
+    	final List<List<DataInstance>> parts;
+    	final int size;
+    	
+    	Joined(Collection<List<DataInstance>> parts) {
+    		this.parts = new ArrayList<>(parts);
+    		int n = 0;
+    		for(List<DataInstance> v : parts) {
+    			n += v.size();
+    		}
+    		this.size = n;
+    	}
+    	
+    	public DataInstance get(int index) {
+    		int i = index;
+    		for(List<DataInstance> v : parts) {
+    			if(i < v.size()) {
+    				return v.get(i);
+    			}
+    			i -= v.size();
+    		}
+    		throw new IndexOutOfBoundsException("sample " + index + " of " + size);
+    	}
+    	
+    	public int size() {
+    		return size;
+    	}
+    }
+    
+    /* samples on or inside the margin of a pair their class takes part in; the rest cannot become
+     * support vectors again, so dropping them from a fold leaves the SVM (nearly) unchanged */
+    private List<DataInstance> marginSamples(Joined trainingData) {
+    	CompiledModel model = compiled;
+    	if(model == null) {
+    		/* every sample; a TrainingStore snapshot is immutable and is kept as it is, not copied */
+    		List<List<DataInstance>> parts = new ArrayList<>();
+    		for(List<DataInstance> v : trainingData.parts) {
+    			parts.add(v instanceof TrainingStore.Rows ? v : new ArrayList<>(v));
+    		}
+    		return new Joined(parts);
+    	}
+    	
+    	List<DataInstance> res = new ArrayList<>();
+    	for(DataInstance data : trainingData) {
+    		int c = model.classIndex(data.label);
+    		float[] features = featureCalc.newFeatures(data.measurements);
+    		for(int p = 0; p < model.weights.length; p++) {
+    			int target = model.pairSecond[p] == c ? 1 : model.pairFirst[p] == c ? -1 : 0;
+    			if(target != 0 && target * model.decision(p, features) <= 1 + 1e-3) {
+    				res.add(data);
+    				break;
+    			}
+    		}
+    	}
+    	return res;
+    }
+    
+    public boolean addData(double[] valueArray, String label) {
+    	DataInstance data = new DataInstance();
+    	data.label = label;
+    	data.measurements = new float[valueArray.length];
+    	for(int i = 0; i < valueArray.length; i++) {
+    		data.measurements[i] = (float) valueArray[i];
+    	}
+    	return addData(data);
+    }
+    
+    /* learn from one labeled sample right away, in O(features) for a compiled model;
+     * returns true once enough samples are pending to fold them into the SMO */
+    public synchronized boolean addData(DataInstance data) {
+    	pending.add(data);
+    	
+    	CompiledModel model = compiled;
+    	if(model != null) {
+    		int c = model.classIndex(data.label);
+    		if(c >= 0) {
+    			compiled = model.update(featureCalc.newFeatures(data.measurements), c, onlineC);
+    		}
+    	}
+    	return pending.size() >= foldBatchSize;
+    }
+    
+    /* the training set for a fold: retained samples plus everything added online, in class order */
+    public synchronized Map<String, List<DataInstance>> foldData() {
+    	Map<String, List<DataInstance>> res = new LinkedHashMap<>();
+    	for(String label : featureCalc.classLabels) {
+    		res.put(label, new ArrayList<>());
+    	}
+    	for(DataInstance data : retained) {
+    		res.computeIfAbsent(data.label, k -> new ArrayList<>()).add(data);
+    	}
+    	for(DataInstance data : pending) {
+    		res.computeIfAbsent(data.label, k -> new ArrayList<>()).add(data);
+    	}
+    	return res;
+    }
+    
+    public synchronized int pendingCount() {
+    	return pending.size();
+    }
+    
+    /* samples added after the first n pending ones, e.g. while a fold was training */
+    public synchronized List<DataInstance> pendingAfter(int n) {
+    	return new ArrayList<>(pending.subList(Math.min(n, pending.size()), pending.size()));
     }
 }
\ No newline at end of file
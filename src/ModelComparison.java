@@ -0,0 +1,156 @@
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/* Trains several kinds of Weka classifier on one CSV file and scores them on another, side by side
+ *
+ * The models train concurrently, so that phase takes about as long as the slowest model;
+ * training times are wall-clock under that contention, run with one thread (the third
+ * argument) when they have to be free of it. Scoring starts once every model has trained and
+ * runs one model at a time, so the latency percentiles, per classify() call on the path the
+ * model uses at runtime, are never measured against another model's work.
+ */
+
+public class ModelComparison {
+
+	/* one model to compare: a label, a Weka classifier class and its options (null for defaults) */
+	public static class Entry {
+		final String name;
+		final String algorithm;
+		final String options;
+
+		public Entry(String name, String algorithm, String options) {
+			this.name = name;
+			this.algorithm = algorithm;
+			this.options = options;
+		}
+	}
+
+	static class Row {
+		Entry entry;
+		boolean trained;
+		String path;
+		double trainMillis;
+		long wekaBytes;
+		long runtimeBytes;
+		MLClassifier classifier;
+		BatchEvaluator result;
+	}
+
+	public static List<Entry> defaults() {
+		List<Entry> res = new ArrayList<>();
+		res.add(new Entry("SMO linear", MLClassifier.DEFAULT_ALGORITHM, MLClassifier.DEFAULT_OPTIONS));
+		res.add(new Entry("SMO rbf", MLClassifier.DEFAULT_ALGORITHM, new HyperparameterSearch.Candidate(10, "rbf", 0, 0.7).options()));
+		res.add(new Entry("Logistic", "weka.classifiers.functions.Logistic", "-R 1.0E-8 -M -1"));
+		res.add(new Entry("RandomForest", "weka.classifiers.trees.RandomForest", "-I 100 -num-slots 1 -S 1"));
+		res.add(new Entry("J48", "weka.classifiers.trees.J48", "-C 0.25 -M 2"));
+		res.add(new Entry("NaiveBayes", "weka.classifiers.bayes.NaiveBayes", null));
+		res.add(new Entry("kNN (k=3)", "weka.classifiers.lazy.IBk", "-K 3"));
+		return res;
+	}
+
+	/* train one model; an untrained row if Weka fails */
+	static Row train(Entry entry, Map<String, List<DataInstance>> trainingData) throws Exception {
+		Row res = new Row();
+		res.entry = entry;
+
+		MLClassifier classifier = new MLClassifier(null, entry.algorithm, entry.options);
+		classifier.verbose = false;
+		long start = System.nanoTime();
+		res.trained = classifier.train(trainingData, null);
+		res.trainMillis = (System.nanoTime() - start) / 1e6;
+		if (!res.trained) {
+			return res;
+		}
+		res.classifier = classifier;
+		res.path = classifier.compiled != null ? "compiled" : classifier.kernelModel != null ? "kernel" : "weka";
+		res.wekaBytes = serializedSize(classifier.classifier);
+		res.runtimeBytes = classifier.compiled != null ? serializedSize(classifier.compiled)
+				: classifier.kernelModel != null ? serializedSize(classifier.kernelModel) : res.wekaBytes;
+		return res;
+	}
+
+	/* score a trained row on the calling thread */
+	static void score(Row row, List<DataInstance> testData) throws Exception {
+		/* a first pass to warm up the JIT, so the percentiles are steady-state */
+		BatchEvaluator.evaluate(row.classifier, testData, 1);
+		row.result = BatchEvaluator.evaluate(row.classifier, testData, 1);
+		row.classifier = null;
+	}
+
+	/* bytes of a model's serialized form */
+	static long serializedSize(Object model) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream out = new ObjectOutputStream(bytes);
+			out.writeObject(model);
+			out.close();
+			return bytes.size();
+		} catch (Exception e) {
+			e.printStackTrace();
+			return -1;
+		}
+	}
+
+	public static List<Row> compare(List<Entry> entries, Map<String, List<DataInstance>> trainingData,
+			List<DataInstance> testData, int threads) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, entries.size())));
+		List<Future<Row>> futures = new ArrayList<>();
+		try {
+			for (Entry entry : entries) {
+				futures.add(executor.submit(() -> train(entry, trainingData)));
+			}
+			List<Row> res = new ArrayList<>();
+			for (Future<Row> f : futures) {
+				res.add(f.get());
+			}
+
+			for (Row row : res) {
+				if (row.trained) {
+					score(row, testData);
+				}
+			}
+			return res;
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	static void print(List<Row> rows) {
+		/* weka is the trained Weka object, runtime what classify() uses: the compiled or kernel model if any */
+		System.out.printf("%-14s %9s %10s %11s %14s %10s %10s  %s%n", "model", "accuracy", "train ms", "weka (KB)", "runtime (KB)", "p50 (us)", "p99 (us)", "path");
+		for (Row row : rows) {
+			if (!row.trained) {
+				System.out.printf("%-14s %9s%n", row.entry.name, "failed");
+				continue;
+			}
+			System.out.printf("%-14s %8.1f%% %10.0f %11.1f %14.1f %10.1f %10.1f  %s%n",
+					row.entry.name, 100 * row.result.accuracy(), row.trainMillis, row.wekaBytes / 1024.0, row.runtimeBytes / 1024.0,
+					row.result.percentile(50) / 1e3, row.result.percentile(99) / 1e3,
+					row.path);
+		}
+	}
+
+	/* ModelComparison [train.csv] [test.csv] [threads] */
+	public static void main(String[] args) throws Exception {
+		String trainFileName = args.length > 0 ? args[0] : "test.csv";
+		String testFileName = args.length > 1 ? args[1] : "Robust_Test_Set.csv";
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+		Map<String, List<DataInstance>> trainingData = CsvLoader.load(trainFileName);
+		List<DataInstance> testData = new ArrayList<>();
+		for (List<DataInstance> v : CsvLoader.load(testFileName).values()) {
+			testData.addAll(v);
+		}
+
+		List<Entry> entries = defaults();
+		System.out.println("Training " + entries.size() + " models on " + trainFileName + " on " + threads + " threads, then scoring "
+				+ testData.size() + " frames from " + testFileName + " one model at a time ...");
+		print(compare(entries, trainingData, testData, threads));
+	}
+}
@@ -0,0 +1,174 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/* Trains classifiers on a background thread and publishes each one with an atomic swap
+ *
+ * The active model keeps serving frames while a new one trains; readers only ever see a
+ * fully trained MLClassifier or the previous one.
+ */
+
+public class ModelTrainer {
+
+	final AtomicReference<MLClassifier> active;
+	Supplier<MLClassifier> factory = MLClassifier::new;
+	final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "model-trainer");
+		t.setDaemon(true);
+		t.setPriority(Thread.MIN_PRIORITY);
+		return t;
+	});
+
+	/* the running job, if any; only touched while holding this */
+	Job job;
+
+	class Job implements MLClassifier.Progress {
+		volatile String stage = "Queued";
+		volatile double fraction = 0;
+		volatile boolean cancelled = false;
+		Future<?> future;
+
+		public void stage(String name, double fraction) {
+			this.stage = name;
+			this.fraction = fraction;
+		}
+
+		public boolean cancelled() {
+			return cancelled;
+		}
+	}
+
+	public ModelTrainer() {
+		this(new AtomicReference<>());
+	}
+
+	public ModelTrainer(AtomicReference<MLClassifier> active) {
+		this.active = active;
+	}
+
+	/* how full retrains create their classifier, e.g. to configure a FeatureTransform */
+	public void setFactory(Supplier<MLClassifier> factory) {
+		this.factory = factory;
+	}
+
+	public MLClassifier active() {
+		return active.get();
+	}
+
+	/* make a loaded or otherwise prepared model the active one */
+	public void publish(MLClassifier classifier) {
+		active.set(classifier);
+	}
+
+	/* start training on a snapshot of trainingData, cancelling any job still running */
+	public synchronized void train(Map<String, List<DataInstance>> trainingData) {
+		cancel();
+
+		/* copy the lists so frames added while training don't race with the trainer */
+		Map<String, List<DataInstance>> snapshot = new HashMap<>();
+		for (Map.Entry<String, List<DataInstance>> e : trainingData.entrySet()) {
+			snapshot.put(e.getKey(), new ArrayList<>(e.getValue()));
+		}
+		submit(snapshot, null, 0);
+	}
+
+	/* start training on the store's current contents; its snapshot is already immutable */
+	public synchronized void train(TrainingStore store) {
+		cancel();
+		submit(store.snapshot(), null, 0);
+	}
+
+	/* fold the samples current has learned online into a fresh SMO, trained only on its retained
+	 * margin samples plus the new ones; does nothing while another job is running */
+	public synchronized void fold(MLClassifier current) {
+		if (job != null) {
+			return;
+		}
+		Map<String, List<DataInstance>> trainingData;
+		int folded;
+		synchronized (current) {
+			trainingData = current.foldData();
+			folded = current.pendingCount();
+		}
+		submit(trainingData, current, folded);
+	}
+
+	private void submit(Map<String, List<DataInstance>> trainingData, MLClassifier foldedFrom, int folded) {
+
+		Job started = new Job();
+		job = started;
+		started.future = executor.submit(() -> {
+			long start = System.currentTimeMillis();
+			MLClassifier classifier = foldedFrom != null ? foldedFrom.emptyCopy() : factory.get();
+			boolean trained = classifier.train(trainingData, started);
+			if (trained && !started.cancelled) {
+				started.stage("Warming up", 0.95);
+				classifier.warmUp(10000);
+			}
+
+			synchronized (ModelTrainer.this) {
+				if (trained && !started.cancelled) {
+					if (foldedFrom == null) {
+						active.set(classifier);
+						System.out.println("Model swapped in after " + (System.currentTimeMillis() - start) + " ms");
+					} else if (swapFold(foldedFrom, folded, classifier)) {
+						System.out.println("Fold swapped in after " + (System.currentTimeMillis() - start) + " ms");
+					} else {
+						System.out.println("Discarding fold, the active model changed meanwhile");
+					}
+				}
+				if (job == started) {
+					job = null;
+				}
+			}
+		});
+	}
+
+	/* carry over the samples foldedFrom learned while the fold was training and swap the fold in;
+	 * holding foldedFrom's lock, so no addData() on it lands between the copy and the swap */
+	private boolean swapFold(MLClassifier foldedFrom, int folded, MLClassifier classifier) {
+		synchronized (foldedFrom) {
+			if (active.get() != foldedFrom) {
+				return false;
+			}
+			for (DataInstance data : foldedFrom.pendingAfter(folded)) {
+				classifier.addData(data);
+			}
+			return active.compareAndSet(foldedFrom, classifier);
+		}
+	}
+
+	/* stop the running job; the currently active model stays in place */
+	public synchronized boolean cancel() {
+		if (job == null) {
+			return false;
+		}
+		job.cancelled = true;
+		job.future.cancel(false);
+		job = null;
+		return true;
+	}
+
+	public synchronized boolean isTraining() {
+		return job != null;
+	}
+
+	/* a short description of the running job, e.g. "Training SVM (10%)", or null when idle */
+	public synchronized String progress() {
+		if (job == null) {
+			return null;
+		}
+		return job.stage + " (" + Math.round(job.fraction * 100) + "%)";
+	}
+
+	public void shutdown() {
+		cancel();
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,84 @@
+/* Opens and closes event windows from the spectral energy of each frame
+ *
+ * The noise floor follows the energy outside events: quickly when it drops, slowly when it
+ * rises, so a steady background (a fan, a hum) is absorbed while a tap or a scratch stands
+ * out. An event opens when the energy exceeds openRatio times the floor and closes once it
+ * has stayed below closeRatio times the floor for hangFrames frames.
+ */
+
+public class OnsetDetector {
+
+	public static final int NONE = 0;
+	public static final int ONSET = 1;
+	public static final int OFFSET = 2;
+
+	float openRatio = 4f;	// 6 dB above the floor
+	float closeRatio = 2f;	// 3 dB above the floor
+	int hangFrames = 8;
+	int maxFrames = 400;
+	float floorRise = 0.002f;
+	float floorFall = 0.05f;
+	float minFloor = 1e-10f;
+
+	float floor = 0;
+	float energy;
+	boolean active = false;
+	int eventFrames;
+	int quietFrames;
+
+	/* feed one spectrum, returns ONSET or OFFSET when an event opens or closes on this frame */
+	public int update(float[] spectrum) {
+		/* bin 0 is the DC offset of the input, not vibration */
+		float e = 0;
+		for (int i = 1; i < spectrum.length; i++) {
+			e += spectrum[i] * spectrum[i];
+		}
+		energy = e;
+
+		if (floor == 0) {
+			floor = Math.max(e, minFloor);
+			return NONE;
+		}
+
+		if (!active) {
+			if (e > openRatio * floor) {
+				active = true;
+				eventFrames = 1;
+				quietFrames = 0;
+				return ONSET;
+			}
+			floor += (e < floor ? floorFall : floorRise) * (e - floor);
+			floor = Math.max(floor, minFloor);
+			return NONE;
+		}
+
+		eventFrames++;
+		quietFrames = e < closeRatio * floor ? quietFrames + 1 : 0;
+		if (quietFrames >= hangFrames || eventFrames >= maxFrames) {
+			if (eventFrames >= maxFrames) {
+				/* the background itself got louder; start again from there */
+				floor = Math.max(e, minFloor);
+			}
+			active = false;
+			return OFFSET;
+		}
+		return NONE;
+	}
+
+	public boolean active() {
+		return active;
+	}
+
+	/* frames since the onset, including the one that opened the event */
+	public int eventFrames() {
+		return eventFrames;
+	}
+
+	public float energy() {
+		return energy;
+	}
+
+	public float floor() {
+		return floor;
+	}
+}
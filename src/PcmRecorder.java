@@ -0,0 +1,91 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/* Appends raw 16-bit mono PCM to a WAV file through memory-mapped regions
+ *
+ * Writing is a copy into the mapped region, so the capture thread never blocks on the disk;
+ * the OS writes the pages back. The WAV sizes are filled in on close. A recording cut short
+ * by a crash keeps its samples, with the sizes left at 0, which PcmReplay reads as "up to
+ * the end of the file", plus up to one region of trailing silence.
+ */
+
+public class PcmRecorder implements Closeable {
+
+	static final int HEADER = 44;
+	static final int REGION = 1 << 18;
+
+	final RandomAccessFile file;
+	final FileChannel channel;
+	final int sampleRate;
+	MappedByteBuffer region;
+	long regionStart;
+	long dataBytes;
+	boolean closed = false;
+
+	public PcmRecorder(File path, int sampleRate) throws IOException {
+		this.file = new RandomAccessFile(path, "rw");
+		this.channel = file.getChannel();
+		this.sampleRate = sampleRate;
+		file.setLength(0);
+		channel.write(header(0), 0);
+		regionStart = HEADER;
+		region = channel.map(FileChannel.MapMode.READ_WRITE, regionStart, REGION);
+	}
+
+	/* little-endian 16-bit samples, as AudioCapture reads them; dropped once closed, since the
+	 * capture thread can still hold this recorder for one block after it is swapped out */
+	public synchronized void write(byte[] bytes, int offset, int length) throws IOException {
+		if (closed) {
+			return;
+		}
+		while (length > 0) {
+			if (!region.hasRemaining()) {
+				regionStart += REGION;
+				region = channel.map(FileChannel.MapMode.READ_WRITE, regionStart, REGION);
+			}
+			int n = Math.min(length, region.remaining());
+			region.put(bytes, offset, n);
+			offset += n;
+			length -= n;
+			dataBytes += n;
+		}
+	}
+
+	public synchronized long samplesWritten() {
+		return dataBytes / 2;
+	}
+
+	public synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		region.force();
+		/* the truncated file no longer backs all of the region, a store into it would fault */
+		region = null;
+		channel.write(header(dataBytes), 0);
+		try {
+			channel.truncate(HEADER + dataBytes);
+		} catch (IOException e) {
+			/* some platforms refuse while the region is still mapped; the WAV sizes exclude the padding anyway */
+		}
+		channel.close();
+		file.close();
+	}
+
+	private ByteBuffer header(long dataBytes) {
+		ByteBuffer b = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+		b.put("RIFF".getBytes()).putInt((int) (36 + dataBytes)).put("WAVE".getBytes());
+		b.put("fmt ".getBytes()).putInt(16).putShort((short) 1).putShort((short) 1);
+		b.putInt(sampleRate).putInt(sampleRate * 2).putShort((short) 2).putShort((short) 16);
+		b.put("data".getBytes()).putInt((int) dataBytes);
+		b.flip();
+		return b;
+	}
+}
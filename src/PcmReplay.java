@@ -0,0 +1,189 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.LockSupport;
+
+/* Reads back a recording made by PcmRecorder, either live into a SampleRing or straight through a classifier
+ *
+ * Replaying live stands in for AudioCapture, at real time or a multiple of it. run() pushes
+ * the recording through the same SpectrumFrontEnd and MLClassifier on the calling thread
+ * instead, with no rings that could drop frames, so its labels are the same on every run.
+ */
+
+public class PcmReplay {
+
+	final ShortBuffer samples;
+	final int sampleRate;
+
+	Thread thread;
+	volatile boolean running = false;
+
+	public PcmReplay(File path) throws IOException {
+		MappedByteBuffer map;
+		try (RandomAccessFile file = new RandomAccessFile(path, "r")) {
+			map = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+		}
+		map.order(ByteOrder.LITTLE_ENDIAN);
+		if (map.remaining() < 12 || map.getInt(0) != 0x46464952 || map.getInt(8) != 0x45564157) {
+			throw new IOException(path + " is not a WAV file");
+		}
+
+		/* walk the chunks for the format and the samples, which may come in either order */
+		int rate = 0;
+		boolean found = false;
+		int dataStart = 0;
+		int dataEnd = 0;
+		int position = 12;
+		while (position + 8 <= map.limit()) {
+			int id = map.getInt(position);
+			long size = map.getInt(position + 4) & 0xffffffffL;
+			int body = position + 8;
+			if (id == 0x20746d66) {	// "fmt "
+				if (map.getShort(body) != 1 || map.getShort(body + 2) != 1 || map.getShort(body + 14) != 16) {
+					throw new IOException(path + " is not 16-bit mono PCM, convert it with SpectrumFrontEnd instead");
+				}
+				rate = map.getInt(body + 4);
+			} else if (id == 0x61746164) {	// "data"
+				found = true;
+				dataStart = body;
+				/* 0 is a recording that was never closed: the samples run to the end of the file */
+				dataEnd = (int) (size == 0 ? map.limit() : Math.min(map.limit(), body + size));
+				if (size == 0) {
+					break;
+				}
+			}
+			position = (int) Math.min(map.limit(), body + size + (size & 1));
+		}
+		if (rate == 0 || !found) {
+			throw new IOException(path + " has no PCM data");
+		}
+		map.position(dataStart);
+		map.limit(dataEnd);
+		this.sampleRate = rate;
+		this.samples = map.slice().order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+	}
+
+	public int sampleRate() {
+		return sampleRate;
+	}
+
+	public int length() {
+		return samples.limit();
+	}
+
+	/* samples from position into dst, returning how many were left to copy */
+	public int read(int position, float[] dst) {
+		int n = Math.max(0, Math.min(dst.length, samples.limit() - position));
+		for (int i = 0; i < n; i++) {
+			dst[i] = samples.get(position + i) / 32768f;
+		}
+		return n;
+	}
+
+	/* feed the recording into ring on a thread, blockFrames at a time, at speed times real time */
+	public void play(SampleRing ring, int blockFrames, double speed, boolean loop) {
+		running = true;
+		thread = new Thread(() -> {
+			float[] block = new float[blockFrames];
+			long blockNanos = (long) (1e9 * blockFrames / sampleRate / speed);
+			long deadline = System.nanoTime();
+			int position = 0;
+			while (running) {
+				int n = read(position, block);
+				if (n == 0) {
+					if (!loop) {
+						break;
+					}
+					position = 0;
+					continue;
+				}
+				ring.write(block, 0, n);
+				position += n;
+
+				deadline += blockNanos;
+				long wait = deadline - System.nanoTime();
+				if (wait > 0) {
+					LockSupport.parkNanos(wait);
+				}
+			}
+			running = false;
+		}, "pcm-replay");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public boolean isPlaying() {
+		return running;
+	}
+
+	public void stop() {
+		running = false;
+		try {
+			if (thread != null) {
+				thread.join();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/* called with each classified frame by run(), time in seconds from the start of the recording */
+	public interface FrameListener {
+		void frame(double time, float[] spectrum, String label);
+	}
+
+	/* classify the whole recording as fast as possible; deterministic for a given model and front end */
+	public void run(int bands, int hop, Window window, MLClassifier classifier, FrameListener listener) {
+		SampleRing ring = new SampleRing(4 * 2 * bands);
+		SpectrumFrontEnd frontEnd = new SpectrumFrontEnd(ring, 2 * bands, hop, window);
+		float[] block = new float[hop];
+		float[] spectrum = new float[bands];
+		long frames = 0;
+		int position = 0;
+		int n;
+		while ((n = read(position, block)) > 0) {
+			ring.write(block, 0, n);
+			position += n;
+			while (frontEnd.next(spectrum)) {
+				String label = classifier.classify(spectrum);
+				if (listener != null) {
+					listener.frame((double) (frames * hop + 2 * bands) / sampleRate, spectrum, label);
+				}
+				frames++;
+			}
+		}
+	}
+
+	/* replay a recording through a saved model: PcmReplay session.wav vibration.model [hop] */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.out.println("usage: PcmReplay session.wav vibration.model [hop]");
+			return;
+		}
+		PcmReplay replay = new PcmReplay(new File(args[0]));
+		MLClassifier classifier = MLClassifier.load(args[1]);
+		int hop = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+
+		Map<String, Integer> counts = new TreeMap<>();
+		String[] previous = {null};
+		long start = System.nanoTime();
+		replay.run(512, hop, Window.RECTANGULAR, classifier, (time, spectrum, label) -> {
+			counts.merge(label, 1, Integer::sum);
+			if (!label.equals(previous[0])) {
+				System.out.printf("%8.3f s  %s%n", time, label);
+				previous[0] = label;
+			}
+		});
+		double seconds = (System.nanoTime() - start) / 1e9;
+		double audioSeconds = (double) replay.length() / replay.sampleRate();
+
+		System.out.println("Frames per label: " + counts);
+		System.out.printf("Replayed %.1f s of audio in %.2f s (%.0fx real time)%n", audioSeconds, seconds, audioSeconds / seconds);
+	}
+}
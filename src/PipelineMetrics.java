@@ -0,0 +1,210 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/* Per-stage timings and counters for the frame pipeline, summarised once per interval
+ *
+ * The render, capture and classification threads record into the histograms and counters;
+ * a background thread rolls them into an immutable Report every interval, for the on-screen
+ * overlay, and optionally appends it as one JSON line to a file.
+ */
+
+public class PipelineMetrics {
+
+	/* render thread */
+	final LatencyHistogram waveform = new LatencyHistogram("waveform");
+	final LatencyHistogram render = new LatencyHistogram("render");
+	final LatencyHistogram draw = new LatencyHistogram("draw");
+
+	/* capture thread */
+	final LatencyHistogram fft = new LatencyHistogram("fft");
+
+	/* classification thread */
+	final LatencyHistogram features = new LatencyHistogram("features");
+	final LatencyHistogram classify = new LatencyHistogram("classify");
+
+	final LatencyHistogram[] stages = {waveform, fft, features, classify, render, draw};
+
+	final AtomicLong renderedFrames = new AtomicLong();
+	final AtomicLong classifiedFrames = new AtomicLong();
+	final AtomicLong gatedFrames = new AtomicLong();
+	LongSupplier droppedFrames = () -> 0;
+
+	long intervalMillis;
+	Writer dump;
+	ScheduledExecutorService executor;
+	volatile Report latest;
+
+	/* state of the previous roll, only touched by the metrics thread, and by stop() once it is gone */
+	long lastRoll;
+	long lastRendered;
+	long lastClassified;
+	long lastGated;
+	long lastDropped;
+	long lastAllocated = -1;
+
+	/* e.g. AnalysisPipeline::droppedFrames */
+	public void setDroppedFrames(LongSupplier droppedFrames) {
+		this.droppedFrames = droppedFrames;
+	}
+
+	/* summarise every intervalMillis; dumpFileName may be null to only keep the latest report */
+	public void start(long intervalMillis, String dumpFileName) {
+		this.intervalMillis = intervalMillis;
+		if (dumpFileName != null) {
+			try {
+				dump = new FileWriter(dumpFileName, true);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+
+		lastRoll = System.nanoTime();
+		executor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "pipeline-metrics");
+			t.setDaemon(true);
+			return t;
+		});
+		executor.scheduleAtFixedRate(this::roll, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/* waits for a roll in progress, then rolls the partial last interval before closing the dump */
+	public void stop() {
+		if (executor != null) {
+			executor.shutdown();
+			try {
+				if (executor.awaitTermination(5, TimeUnit.SECONDS)) {
+					/* the metrics thread is gone, so this thread may touch its state now */
+					roll();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			executor = null;
+		}
+		if (dump != null) {
+			try {
+				dump.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			dump = null;
+		}
+	}
+
+	/* the last completed interval, or null before the first one */
+	public Report latest() {
+		return latest;
+	}
+
+	void roll() {
+		long now = System.nanoTime();
+		double seconds = (now - lastRoll) / 1e9;
+		lastRoll = now;
+
+		Report report = new Report();
+		report.time = System.currentTimeMillis();
+		report.seconds = seconds;
+
+		long rendered = renderedFrames.get();
+		long classified = classifiedFrames.get();
+		long gated = gatedFrames.get();
+		long dropped = droppedFrames.getAsLong();
+		report.framesPerSecond = (rendered - lastRendered) / seconds;
+		report.classifiedPerSecond = (classified - lastClassified) / seconds;
+		report.gatedPerSecond = (gated - lastGated) / seconds;
+		report.droppedFrames = dropped - lastDropped;
+		lastRendered = rendered;
+		lastClassified = classified;
+		lastGated = gated;
+		lastDropped = dropped;
+
+		long allocated = allocatedBytes();
+		/* threads that died since the last roll take their counts with them, so clamp at zero */
+		report.allocatedPerSecond = lastAllocated < 0 || allocated < 0 ? 0
+				: Math.max(0, allocated - lastAllocated) / seconds;
+		lastAllocated = allocated;
+
+		report.stages = new LatencyHistogram.Snapshot[stages.length];
+		for (int i = 0; i < stages.length; i++) {
+			report.stages[i] = stages[i].snapshotAndReset();
+		}
+		latest = report;
+
+		if (dump != null) {
+			try {
+				dump.write(report.toJson());
+				dump.write('\n');
+				dump.flush();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/* bytes allocated by all live threads so far, or -1 if the JVM does not track it */
+	static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+			return -1;
+		}
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) {
+			return -1;
+		}
+		long sum = 0;
+		for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+			if (bytes > 0) {
+				sum += bytes;
+			}
+		}
+		return sum;
+	}
+
+	/* one interval's worth of metrics; times are in nanoseconds */
+	public static class Report {
+		long time;
+		double seconds;
+		double framesPerSecond;
+		double classifiedPerSecond;
+		double gatedPerSecond;
+		long droppedFrames;
+		double allocatedPerSecond;
+		LatencyHistogram.Snapshot[] stages;
+
+		public String toJson() {
+			StringBuilder sb = new StringBuilder();
+			sb.append(String.format(Locale.ROOT,
+					"{\"time\":%d,\"seconds\":%.3f,\"fps\":%.1f,\"classifiedPerSecond\":%.1f,\"gatedPerSecond\":%.1f,\"droppedFrames\":%d,\"allocatedBytesPerSecond\":%.0f,\"stages\":{",
+					time, seconds, framesPerSecond, classifiedPerSecond, gatedPerSecond, droppedFrames, allocatedPerSecond));
+			for (int i = 0; i < stages.length; i++) {
+				LatencyHistogram.Snapshot s = stages[i];
+				if (i > 0) {
+					sb.append(',');
+				}
+				sb.append(String.format(Locale.ROOT, "\"%s\":{\"count\":%d,\"mean\":%.0f,\"p50\":%d,\"p99\":%d,\"max\":%d}",
+						s.name, s.count, s.mean, s.p50, s.p99, s.max));
+			}
+			return sb.append("}}").toString();
+		}
+
+		/* a few lines for the on-screen overlay, in microseconds */
+		public String overlay() {
+			StringBuilder sb = new StringBuilder();
+			sb.append(String.format(Locale.ROOT, "%.0f fps  %.0f classified/s  %.0f gated/s  %d dropped  %.1f MB/s alloc%n",
+					framesPerSecond, classifiedPerSecond, gatedPerSecond, droppedFrames, allocatedPerSecond / 1e6));
+			for (LatencyHistogram.Snapshot s : stages) {
+				sb.append(String.format(Locale.ROOT, "%-9s p50 %7.1f  p99 %7.1f  max %7.1f us%n",
+						s.name, s.p50 / 1e3, s.p99 / 1e3, s.max / 1e3));
+			}
+			return sb.toString();
+		}
+	}
+}
@@ -0,0 +1,46 @@
+/* Reduces a signal to the min and max of each plotted column, so drawing costs one line per
+ * column however many samples or bands there are, and no peak between pixels is lost */
+
+public class PlotDecimator {
+
+	final float[] min;
+	final float[] max;
+
+	public PlotDecimator(int columns) {
+		this.min = new float[columns];
+		this.max = new float[columns];
+	}
+
+	public int columns() {
+		return min.length;
+	}
+
+	/* the first n values of src spread over columns(); with more columns than values, each repeats */
+	public void decimate(float[] src, int n) {
+		int columns = min.length;
+		for (int c = 0; c < columns; c++) {
+			int from = (int) ((long) c * n / columns);
+			int to = Math.max(from + 1, (int) ((long) (c + 1) * n / columns));
+			float lo = src[from];
+			float hi = lo;
+			for (int i = from + 1; i < to; i++) {
+				float v = src[i];
+				if (v < lo) {
+					lo = v;
+				} else if (v > hi) {
+					hi = v;
+				}
+			}
+			min[c] = lo;
+			max[c] = hi;
+		}
+	}
+
+	public float min(int column) {
+		return min[column];
+	}
+
+	public float max(int column) {
+		return max[column];
+	}
+}
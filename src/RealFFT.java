@@ -0,0 +1,133 @@
+/* A radix-2 FFT of real input, on primitive arrays with precomputed twiddles
+ *
+ * The n real samples are packed into an n/2-point complex FFT (even samples as the real
+ * part, odd as the imaginary part) and split into the n/2 + 1 bins of the real spectrum
+ * afterwards, which halves the work of a complex FFT of size n.
+ *
+ * An instance keeps its scratch buffers, so it allocates nothing per transform but must
+ * only be used by one thread at a time.
+ */
+
+public class RealFFT {
+
+	final int size;
+	final int half;
+	final int[] reverse;
+
+	/* e^(-2 pi i k / half) for the complex FFT, and e^(-2 pi i k / size) for the split */
+	final float[] cos;
+	final float[] sin;
+	final float[] splitCos;
+	final float[] splitSin;
+
+	final float[] zr;
+	final float[] zi;
+
+	/* the bin computed by the last split() */
+	private float sr;
+	private float si;
+
+	public RealFFT(int size) {
+		if (size < 4 || Integer.bitCount(size) != 1) {
+			throw new IllegalArgumentException("FFT size must be a power of 2 of at least 4: " + size);
+		}
+		this.size = size;
+		this.half = size / 2;
+
+		int bits = Integer.numberOfTrailingZeros(half);
+		reverse = new int[half];
+		for (int k = 0; k < half; k++) {
+			reverse[k] = Integer.reverse(k) >>> (32 - bits);
+		}
+
+		cos = new float[half / 2];
+		sin = new float[half / 2];
+		for (int k = 0; k < half / 2; k++) {
+			cos[k] = (float) Math.cos(2 * Math.PI * k / half);
+			sin[k] = (float) Math.sin(2 * Math.PI * k / half);
+		}
+		splitCos = new float[half];
+		splitSin = new float[half];
+		for (int k = 0; k < half; k++) {
+			splitCos[k] = (float) Math.cos(2 * Math.PI * k / size);
+			splitSin[k] = (float) Math.sin(2 * Math.PI * k / size);
+		}
+
+		zr = new float[half];
+		zi = new float[half];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/* the unnormalised spectrum of in[0..size), bins 0..size/2 into re and im */
+	public void transform(float[] in, float[] re, float[] im) {
+		complexTransform(in);
+
+		re[0] = zr[0] + zi[0];
+		im[0] = 0;
+		re[half] = zr[0] - zi[0];
+		im[half] = 0;
+		for (int k = 1; k < half; k++) {
+			split(k);
+			re[k] = sr;
+			im[k] = si;
+		}
+	}
+
+	/* scale * |X[k]| for the first out.length bins, at most size/2 + 1 */
+	public void magnitudes(float[] in, float[] out, float scale) {
+		complexTransform(in);
+
+		out[0] = scale * Math.abs(zr[0] + zi[0]);
+		int n = Math.min(out.length, half);
+		for (int k = 1; k < n; k++) {
+			split(k);
+			out[k] = scale * (float) Math.sqrt(sr * sr + si * si);
+		}
+		if (out.length > half) {
+			out[half] = scale * Math.abs(zr[0] - zi[0]);
+		}
+	}
+
+	/* bin k of the real spectrum from bins k and half - k of the packed transform, into sr, si */
+	private void split(int k) {
+		int j = half - k;
+		float er = (zr[k] + zr[j]) * 0.5f;
+		float ei = (zi[k] - zi[j]) * 0.5f;
+		float or = (zi[k] + zi[j]) * 0.5f;
+		float oi = (zr[j] - zr[k]) * 0.5f;
+		float c = splitCos[k];
+		float s = splitSin[k];
+		sr = er + c * or + s * oi;
+		si = ei + c * oi - s * or;
+	}
+
+	private void complexTransform(float[] in) {
+		for (int k = 0; k < half; k++) {
+			int r = reverse[k];
+			zr[r] = in[2 * k];
+			zi[r] = in[2 * k + 1];
+		}
+
+		for (int len = 2; len <= half; len <<= 1) {
+			int h = len >> 1;
+			int step = half / len;
+			for (int i = 0; i < half; i += len) {
+				for (int j = 0; j < h; j++) {
+					float wr = cos[j * step];
+					float wi = -sin[j * step];
+					int a = i + j;
+					int b = a + h;
+					float tr = wr * zr[b] - wi * zi[b];
+					float ti = wr * zi[b] + wi * zr[b];
+					zr[b] = zr[a] - tr;
+					zi[b] = zi[a] - ti;
+					zr[a] += tr;
+					zi[a] += ti;
+				}
+			}
+		}
+	}
+}
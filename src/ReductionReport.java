@@ -0,0 +1,71 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/* Compares feature reduction stages by holdout accuracy, feature count and per-frame inference time */
+
+public class ReductionReport {
+
+	public static void main(String[] args) throws Exception {
+		String trainFileName = args.length > 0 ? args[0] : "test.csv";
+		String holdoutFileName = args.length > 1 ? args[1] : "Robust_Test_Set.csv";
+
+		Map<String, List<DataInstance>> trainingData = CsvLoader.load(trainFileName);
+		List<DataInstance> holdout = new ArrayList<>();
+		for (List<DataInstance> v : CsvLoader.load(holdoutFileName).values()) {
+			holdout.addAll(v);
+		}
+
+		List<FeatureTransform> transforms = new ArrayList<>();
+		transforms.add(null);
+		for (int n : new int[] {256, 128, 64, 32, 16, 8}) {
+			transforms.add(new BandPooling(n));
+		}
+		for (int n : new int[] {256, 128, 64, 32, 16, 8}) {
+			transforms.add(new InfoGainSelection(n));
+		}
+		transforms.add(new SpectralFeatures(44100));
+
+		System.out.printf("%-24s %9s %9s %10s %14s%n", "stage", "features", "accuracy", "train ms", "ns/frame");
+		for (FeatureTransform transform : transforms) {
+			long start = System.nanoTime();
+			MLClassifier classifier = new MLClassifier(transform);
+			if (!classifier.train(trainingData, null)) {
+				continue;
+			}
+			long trainNanos = System.nanoTime() - start;
+
+			int correct = 0;
+			for (DataInstance data : holdout) {
+				if (classifier.classify(data.measurements).equals(data.label)) {
+					correct++;
+				}
+			}
+
+			System.out.printf("%-24s %9d %8.1f%% %10.0f %14.0f%n",
+					transform == null ? "raw bins" : transform.toString(),
+					classifier.featureCalc.nfeatures,
+					100.0 * correct / holdout.size(),
+					trainNanos / 1e6,
+					nanosPerFrame(classifier, holdout));
+		}
+	}
+
+	/* steady-state time of the classify path actually used at runtime, after a warm-up */
+	static double nanosPerFrame(MLClassifier classifier, List<DataInstance> data) {
+		int rounds = Math.max(1, 200000 / data.size());
+		for (int r = 0; r < rounds; r++) {
+			for (DataInstance d : data) {
+				classifier.classify(d.measurements);
+			}
+		}
+
+		long start = System.nanoTime();
+		for (int r = 0; r < rounds; r++) {
+			for (DataInstance d : data) {
+				classifier.classify(d.measurements);
+			}
+		}
+		return (double) (System.nanoTime() - start) / (rounds * data.size());
+	}
+}
@@ -0,0 +1,91 @@
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.util.concurrent.atomic.AtomicLong;
+
+/* A single-producer ring of audio samples, addressed by absolute sample position
+ *
+ * The producer never waits: it overwrites the oldest samples, and readers detect that the
+ * range they copied was overwritten by checking the write position again afterwards. Only
+ * the newer half of the ring is readable, so a write in progress (of at most half the
+ * capacity) can never touch it.
+ *
+ * That check is a seqlock read: a load fence keeps the plain loads of the copy ahead of the
+ * second read of written, as StampedLock.validate() does, since the JMM lets them move past
+ * it on hardware that, unlike x86, reorders loads. Java 8 only has that fence in
+ * sun.misc.Unsafe, which is not visible to javac with --release 8, hence the handle.
+ */
+
+public class SampleRing {
+
+	static final MethodHandle LOAD_FENCE = loadFence();
+
+	final float[] samples;
+	final int mask;
+
+	/* total samples ever written; only the producer writes it */
+	final AtomicLong written = new AtomicLong();
+
+	public SampleRing(int capacity) {
+		int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+		this.samples = new float[size];
+		this.mask = size - 1;
+	}
+
+	public int capacity() {
+		return samples.length;
+	}
+
+	public long written() {
+		return written.get();
+	}
+
+	/* producer side; length must be at most capacity() / 2, or the write could reach the readable half */
+	public void write(float[] src, int offset, int length) {
+		if (length > samples.length / 2) {
+			throw new IllegalArgumentException("write of " + length + " samples into a ring of " + samples.length);
+		}
+		long w = written.get();
+		int start = (int) w & mask;
+		int first = Math.min(length, samples.length - start);
+		System.arraycopy(src, offset, samples, start, first);
+		System.arraycopy(src, offset + first, samples, 0, length - first);
+		written.lazySet(w + length);
+	}
+
+	/* copy dst.length samples starting at position; false if they are not (or no longer) all in the ring */
+	public boolean copy(long position, float[] dst) {
+		int length = dst.length;
+		if (position < 0 || position + length > written.get() || length > samples.length / 2) {
+			return false;
+		}
+		int start = (int) position & mask;
+		int first = Math.min(length, samples.length - start);
+		System.arraycopy(samples, start, dst, 0, first);
+		System.arraycopy(samples, 0, dst, first, length - first);
+
+		/* the producer may have moved into the range while copying */
+		try {
+			LOAD_FENCE.invokeExact();
+		} catch (Throwable e) {
+			throw new AssertionError(e);
+		}
+		return written.get() - position <= samples.length / 2;
+	}
+
+	/* the most recent dst.length samples, e.g. for drawing the waveform */
+	public boolean latest(float[] dst) {
+		return copy(written.get() - dst.length, dst);
+	}
+
+	private static MethodHandle loadFence() {
+		try {
+			Class<?> unsafe = Class.forName("sun.misc.Unsafe");
+			Field f = unsafe.getDeclaredField("theUnsafe");
+			f.setAccessible(true);
+			return MethodHandles.lookup().unreflect(unsafe.getMethod("loadFence")).bindTo(f.get(null));
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+}
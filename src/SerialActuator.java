@@ -0,0 +1,51 @@
+import java.io.IOException;
+
+import com.fazecast.jSerialComm.SerialPort;
+
+/* An Actuator on a serial port through jSerialComm, with a bounded write time */
+
+public class SerialActuator implements Actuator {
+
+	final String portName;
+	final int baudRate;
+	int writeTimeoutMillis = 500;
+	SerialPort port;
+
+	public SerialActuator(String portName, int baudRate) {
+		this.portName = portName;
+		this.baudRate = baudRate;
+	}
+
+	public void open() throws IOException {
+		port = SerialPort.getCommPort(portName);
+		port.setComPortParameters(baudRate, 8, SerialPort.ONE_STOP_BIT, SerialPort.NO_PARITY);
+		port.setComPortTimeouts(SerialPort.TIMEOUT_WRITE_BLOCKING, 0, writeTimeoutMillis);
+		if (!port.openPort()) {
+			throw new IOException("COM port " + portName + " NOT available");
+		}
+	}
+
+	public boolean isOpen() {
+		return port != null && port.isOpen();
+	}
+
+	public void write(byte[] message) throws IOException {
+		int written = port.writeBytes(message, message.length);
+		if (written < 0) {
+			throw new IOException("write to " + portName + " failed");
+		}
+		if (written < message.length) {
+			throw new IOException("write to " + portName + " timed out after " + writeTimeoutMillis + " ms");
+		}
+	}
+
+	public void close() {
+		if (port != null) {
+			port.closePort();
+		}
+	}
+
+	public String toString() {
+		return portName;
+	}
+}
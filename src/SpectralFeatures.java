@@ -0,0 +1,175 @@
+import java.util.List;
+
+/* Summarises the FFT magnitudes as log mel-band energies, MFCCs and four spectral-shape values
+ *
+ * The mel bands are triangular filters spaced evenly on the mel scale between minFrequency
+ * and the Nyquist frequency; each bin lies on the edges of at most two, so the band energies,
+ * total power, centroid and flatness are all accumulated in one pass over the bins. The MFCCs
+ * are the DCT-II of the log band energies. Rolloff is the frequency below which 85% of the
+ * power lies. All tables are built by fit(), apply() works in the output array alone.
+ */
+
+public class SpectralFeatures implements FeatureTransform {
+
+	private static final long serialVersionUID = 1L;
+
+	static final float EPSILON = 1e-12f;
+	static final float ROLLOFF = 0.85f;
+
+	final int nmels;
+	final int ncoefficients;
+	final float sampleRate;
+	float minFrequency = 20;
+
+	int nbins;
+	float binHz;
+
+	/* bin k adds weight[k] of its power to band upper[k] and the rest to band upper[k] - 1 */
+	int[] upper;
+	float[] weight;
+
+	/* [coefficient][band] */
+	float[] dct;
+
+	/* 24 bands and 12 MFCCs, 40 features in all */
+	public SpectralFeatures(float sampleRate) {
+		this(24, 12, sampleRate);
+	}
+
+	public SpectralFeatures(int nmels, int ncoefficients, float sampleRate) {
+		this.nmels = nmels;
+		this.ncoefficients = ncoefficients;
+		this.sampleRate = sampleRate;
+	}
+
+	static double mel(double hz) {
+		return 2595 * Math.log10(1 + hz / 700);
+	}
+
+	static double hz(double mel) {
+		return 700 * (Math.pow(10, mel / 2595) - 1);
+	}
+
+	public FeatureTransform fit(List<DataInstance> trainingData, List<String> classLabels) {
+		SpectralFeatures res = new SpectralFeatures(nmels, ncoefficients, sampleRate);
+		res.minFrequency = minFrequency;
+		res.nbins = trainingData.get(0).measurements.length;
+		res.binHz = sampleRate / (2f * res.nbins);
+
+		/* nmels + 2 edges; band m rises from edge m to m + 1 and falls to m + 2 */
+		double lo = mel(minFrequency);
+		double hi = mel(sampleRate / 2);
+		double[] edges = new double[nmels + 2];
+		for (int e = 0; e < edges.length; e++) {
+			edges[e] = hz(lo + (hi - lo) * e / (nmels + 1));
+		}
+
+		res.upper = new int[res.nbins];
+		res.weight = new float[res.nbins];
+		int e = 0;
+		for (int k = 0; k < res.nbins; k++) {
+			double f = k * res.binHz;
+			while (e < edges.length && edges[e] <= f) {
+				e++;
+			}
+			/* f lies between edges[e - 1] and edges[e], on the rise of band e - 1 and the fall of band e - 2 */
+			if (e == 0 || e == edges.length) {
+				res.upper[k] = -1;
+				continue;
+			}
+			res.upper[k] = e - 1;
+			res.weight[k] = (float) ((f - edges[e - 1]) / (edges[e] - edges[e - 1]));
+		}
+
+		res.dct = new float[ncoefficients * nmels];
+		for (int c = 0; c < ncoefficients; c++) {
+			for (int m = 0; m < nmels; m++) {
+				res.dct[c * nmels + m] = (float) (Math.sqrt(2.0 / nmels) * Math.cos(Math.PI * c * (m + 0.5) / nmels));
+			}
+		}
+		return res;
+	}
+
+	public int outputSize() {
+		return nmels + ncoefficients + 4;
+	}
+
+	public String attributeName(int index) {
+		if (index < nmels) {
+			return "mel" + index;
+		}
+		if (index < nmels + ncoefficients) {
+			return "mfcc" + (index - nmels);
+		}
+		return new String[] {"centroid", "rolloff", "flatness", "energy"}[index - nmels - ncoefficients];
+	}
+
+	public void apply(float[] measurements, float[] out) {
+		for (int m = 0; m < nmels; m++) {
+			out[m] = 0;
+		}
+
+		double total = 0;
+		double weighted = 0;
+		double logSum = 0;
+		double product = 1;
+		for (int k = 0; k < nbins; k++) {
+			float p = measurements[k] * measurements[k];
+			total += p;
+			weighted += k * p;
+
+			/* one log per 16 bins; with EPSILON a product of 16 stays above 1e-192 */
+			product *= p + EPSILON;
+			if ((k & 15) == 15) {
+				logSum += Math.log(product);
+				product = 1;
+			}
+
+			int m = upper[k];
+			if (m >= 0) {
+				if (m < nmels) {
+					out[m] += weight[k] * p;
+				}
+				if (m > 0) {
+					out[m - 1] += (1 - weight[k]) * p;
+				}
+			}
+		}
+
+		logSum += Math.log(product);
+
+		/* the first bin whose cumulative power reaches ROLLOFF of the total */
+		double target = ROLLOFF * total;
+		double cumulative = 0;
+		int rolloff = 0;
+		while (rolloff < nbins - 1) {
+			cumulative += measurements[rolloff] * measurements[rolloff];
+			if (cumulative >= target) {
+				break;
+			}
+			rolloff++;
+		}
+
+		for (int m = 0; m < nmels; m++) {
+			out[m] = (float) Math.log10(out[m] + EPSILON);
+		}
+		for (int c = 0; c < ncoefficients; c++) {
+			float sum = 0;
+			int row = c * nmels;
+			for (int m = 0; m < nmels; m++) {
+				sum += dct[row + m] * out[m];
+			}
+			out[nmels + c] = sum;
+		}
+
+		int i = nmels + ncoefficients;
+		out[i] = total > 0 ? (float) (weighted / total * binHz) : 0;
+		out[i + 1] = rolloff * binHz;
+		out[i + 2] = (float) (Math.exp(logSum / nbins) / (total / nbins + EPSILON));
+		out[i + 3] = (float) Math.log10(total + EPSILON);
+	}
+
+	public String toString() {
+		return "SpectralFeatures(" + nmels + " mel, " + ncoefficients + " mfcc)";
+	}
+}
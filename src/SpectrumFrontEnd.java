@@ -0,0 +1,126 @@
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/* Turns a stream of samples into magnitude spectra: windowed frames of a fixed size, one per hop
+ *
+ * With the defaults (rectangular window, size 2 * bands) the spectra have the same bins and
+ * scale as processing.sound.FFT, so models trained on either front end work with the other.
+ * Frames are produced in sample time rather than wall-clock time, which makes the output
+ * deterministic for a given recording.
+ */
+
+public class SpectrumFrontEnd {
+
+	final SampleRing ring;
+	final RealFFT fft;
+	final int hop;
+	final float[] window;
+	final float scale;
+
+	final float[] frame;
+	long position;
+	long skippedSamples;
+
+	public SpectrumFrontEnd(SampleRing ring, int size, int hop, Window window) {
+		if (hop <= 0 || size > ring.capacity() / 2) {
+			throw new IllegalArgumentException("need 0 < hop and size <= capacity / 2");
+		}
+		this.ring = ring;
+		this.fft = new RealFFT(size);
+		this.hop = hop;
+		this.window = window.coefficients(size);
+		this.frame = new float[size];
+
+		/* processing.sound.FFT reports 2 * |X[k]| of a transform scaled by 2 / size */
+		this.scale = 4f / size;
+	}
+
+	/* the number of bins next() fills, without the Nyquist bin */
+	public int bands() {
+		return fft.size() / 2;
+	}
+
+	public int hop() {
+		return hop;
+	}
+
+	/* samples skipped because the reader fell too far behind the producer */
+	public long skippedSamples() {
+		return skippedSamples;
+	}
+
+	/* fill spectrum with the next frame, if enough samples have arrived; allocates nothing */
+	public boolean next(float[] spectrum) {
+		int size = frame.length;
+		while (true) {
+			long written = ring.written();
+
+			/* behind by more than the readable half of the ring: jump to the newest full frame */
+			long oldest = written - ring.capacity() / 2;
+			if (position < oldest) {
+				long target = written - size;
+				skippedSamples += target - position;
+				position = target;
+			}
+			if (position + size > written) {
+				return false;
+			}
+			if (ring.copy(position, frame)) {
+				break;
+			}
+		}
+
+		for (int i = 0; i < size; i++) {
+			frame[i] *= window[i];
+		}
+		fft.magnitudes(frame, spectrum, scale);
+		position += hop;
+		return true;
+	}
+
+	/* the spectra of a recording as training rows: SpectrumFrontEnd file.wav label out.csv [hop] [window] */
+	public static void main(String[] args) throws IOException, UnsupportedAudioFileException {
+		if (args.length < 3) {
+			System.out.println("usage: SpectrumFrontEnd file.wav label out.csv [hop] [RECTANGULAR|HANN|HAMMING]");
+			return;
+		}
+		int bands = 512;
+		int hop = args.length > 3 ? Integer.parseInt(args[3]) : 256;
+		Window window = args.length > 4 ? Window.valueOf(args[4]) : Window.RECTANGULAR;
+
+		AudioInputStream source = AudioSystem.getAudioInputStream(new BufferedInputStream(new FileInputStream(new File(args[0]))));
+		AudioFormat mono = new AudioFormat(source.getFormat().getSampleRate(), 16, 1, true, false);
+		SampleRing ring = new SampleRing(1 << 16);
+		SpectrumFrontEnd frontEnd = new SpectrumFrontEnd(ring, 2 * bands, hop, window);
+
+		DataInstance row = new DataInstance();
+		row.label = args[1];
+		row.measurements = new float[bands];
+		byte[] bytes = new byte[2 * 4096];
+		float[] samples = new float[4096];
+		int rows = 0;
+		try (InputStream in = AudioSystem.getAudioInputStream(mono, source); Writer out = new FileWriter(args[2])) {
+			int read;
+			while ((read = in.read(bytes)) > 0) {
+				int n = read / 2;
+				AudioCapture.toFloat(bytes, n, samples);
+				ring.write(samples, 0, n);
+				while (frontEnd.next(row.measurements)) {
+					out.write(row.toCSVRow());
+					rows++;
+				}
+			}
+		}
+		System.out.println("Wrote " + rows + " spectra to " + args[2]);
+	}
+}
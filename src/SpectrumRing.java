@@ -0,0 +1,69 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/* A lock-free single-producer/single-consumer ring of fixed-size spectrum frames */
+
+public class SpectrumRing {
+
+	final float[][] slots;
+	final int mask;
+	final int frameSize;
+
+	/* head is only written by the producer, tail only by the consumer */
+	final AtomicLong head = new AtomicLong();
+	final AtomicLong tail = new AtomicLong();
+	final AtomicLong dropped = new AtomicLong();
+
+	public SpectrumRing(int capacity, int frameSize) {
+		int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+		this.slots = new float[size][frameSize];
+		this.mask = size - 1;
+		this.frameSize = frameSize;
+	}
+
+	/* producer side: copy a frame in, or drop it if the consumer has fallen a full ring behind */
+	public boolean offer(float[] frame) {
+		long h = head.get();
+		if (h - tail.get() >= slots.length) {
+			dropped.incrementAndGet();
+			return false;
+		}
+		System.arraycopy(frame, 0, slots[(int) h & mask], 0, frameSize);
+		head.lazySet(h + 1);
+		return true;
+	}
+
+	/* consumer side: copy the oldest unread frame out */
+	public boolean poll(float[] frame) {
+		long t = tail.get();
+		if (t == head.get()) {
+			return false;
+		}
+		System.arraycopy(slots[(int) t & mask], 0, frame, 0, frameSize);
+		tail.lazySet(t + 1);
+		return true;
+	}
+
+	/* any thread: copy the most recently published frame, without consuming it */
+	public boolean latest(float[] frame) {
+		while (true) {
+			long h = head.get();
+			if (h == 0) {
+				return false;
+			}
+			System.arraycopy(slots[(int) (h - 1) & mask], 0, frame, 0, frameSize);
+
+			/* the slot can only have been rewritten if the producer lapped it meanwhile */
+			if (head.get() - h < slots.length - 1) {
+				return true;
+			}
+		}
+	}
+
+	public int size() {
+		return (int) (head.get() - tail.get());
+	}
+
+	public long droppedFrames() {
+		return dropped.get();
+	}
+}
@@ -0,0 +1,249 @@
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.Writer;
+import java.util.AbstractList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.RandomAccess;
+
+/* Labeled frames for training, at most capacity per class, each class in one float matrix
+ *
+ * Once a class is full a new frame either replaces a uniformly chosen one (RESERVOIR, so the
+ * class stays a fair sample of everything seen) or the oldest (RECENT). A frame within
+ * dedupTolerance of the class's last accepted frame, relative to its norm, is not stored:
+ * a held-down key otherwise records the same spectrum many times over.
+ *
+ * snapshot() shares the matrices with the trainer instead of copying them; the next write to
+ * a class copies its matrix first. Training fills its Weka instances straight from them.
+ */
+
+public class TrainingStore {
+
+	public enum Policy { RESERVOIR, RECENT }
+
+	class ClassRows {
+		final String label;
+		float[] data = new float[0];
+		int count;
+		long seen;
+		int next;	// RECENT: the row to overwrite
+		boolean shared;
+		float[] last;
+
+		ClassRows(String label) {
+			this.label = label;
+		}
+
+		/* row index to write a new frame to, or -1 to drop it */
+		int slot() {
+			seen++;
+			if (count < capacity) {
+				if ((count + 1) * bins > data.length) {
+					grow(Math.min(capacity, Math.max(16, 2 * count)));
+				}
+				return count++;
+			}
+			if (policy == Policy.RECENT) {
+				int res = next;
+				next = (next + 1) % capacity;
+				return res;
+			}
+			long j = (long) (random.nextDouble() * seen);
+			return j < capacity ? (int) j : -1;
+		}
+
+		void grow(int rows) {
+			float[] res = new float[rows * bins];
+			System.arraycopy(data, 0, res, 0, count * bins);
+			data = res;
+			shared = false;
+		}
+
+		void write(int row, float[] frame) {
+			if (shared) {
+				data = data.clone();
+				shared = false;
+			}
+			System.arraycopy(frame, 0, data, row * bins, bins);
+		}
+	}
+
+	/* an immutable view of a class's matrix, as MLClassifier.train expects it; FeatureCalc reads
+	 * the matrix in place, other readers get a new DataInstance per get() that nothing caches */
+	static class Rows extends AbstractList<DataInstance> implements RandomAccess, Serializable {
+		private static final long serialVersionUID = 1L;
+
+		final String label;
+		final float[] data;
+		final int bins;
+		final int count;
+
+		Rows(String label, float[] data, int bins, int count) {
+			this.label = label;
+			this.data = data;
+			this.bins = bins;
+			this.count = count;
+		}
+
+		public DataInstance get(int i) {
+			if (i < 0 || i >= count) {
+				throw new IndexOutOfBoundsException("row " + i + " of " + count);
+			}
+			DataInstance res = new DataInstance();
+			res.label = label;
+			res.measurements = new float[bins];
+			System.arraycopy(data, i * bins, res.measurements, 0, bins);
+			return res;
+		}
+
+		public int size() {
+			return count;
+		}
+	}
+
+	final Map<String, ClassRows> classes = new LinkedHashMap<>();
+	final int capacity;
+	int bins;
+	Policy policy = Policy.RESERVOIR;
+	float dedupTolerance = 1e-3f;
+	long duplicates;
+	final Random random = new Random(1);
+
+	/* bins is taken from the first frame added */
+	public TrainingStore(String[] classNames, int capacity) {
+		this.capacity = capacity;
+		for (String className : classNames) {
+			classes.put(className, new ClassRows(className));
+		}
+	}
+
+	public synchronized void setPolicy(Policy policy) {
+		this.policy = policy;
+	}
+
+	/* 0 keeps every frame, even exact repeats */
+	public synchronized void setDedupTolerance(float dedupTolerance) {
+		this.dedupTolerance = dedupTolerance;
+	}
+
+	/* returns false if the frame was a duplicate or lost the reservoir draw */
+	public boolean add(String label, float[] frame) {
+		return add(label, frame, frame.length);
+	}
+
+	public boolean add(DataInstance data) {
+		return add(data.label, data.measurements);
+	}
+
+	public synchronized boolean add(String label, float[] frame, int length) {
+		if (bins == 0) {
+			bins = length;
+		} else if (length != bins) {
+			System.out.println("Skipping a " + length + " bin frame in a " + bins + " bin store");
+			return false;
+		}
+
+		ClassRows rows = classes.computeIfAbsent(label, ClassRows::new);
+		if (rows.last != null && nearlyEqual(rows.last, frame)) {
+			duplicates++;
+			return false;
+		}
+		if (rows.last == null) {
+			rows.last = new float[bins];
+		}
+		System.arraycopy(frame, 0, rows.last, 0, bins);
+
+		int row = rows.slot();
+		if (row < 0) {
+			return false;
+		}
+		rows.write(row, frame);
+		return true;
+	}
+
+	private boolean nearlyEqual(float[] a, float[] b) {
+		double distance = 0, norm = 0;
+		for (int i = 0; i < bins; i++) {
+			double d = a[i] - b[i];
+			distance += d * d;
+			norm += (double) b[i] * b[i];
+		}
+		return distance <= (double) dedupTolerance * dedupTolerance * norm;
+	}
+
+	public synchronized void addAll(Map<String, List<DataInstance>> data) {
+		for (List<DataInstance> v : data.values()) {
+			for (DataInstance d : v) {
+				add(d);
+			}
+		}
+	}
+
+	/* frames currently held for label */
+	public synchronized int size(String label) {
+		ClassRows rows = classes.get(label);
+		return rows == null ? 0 : rows.count;
+	}
+
+	/* frames offered for label, including those dropped or evicted */
+	public synchronized long seen(String label) {
+		ClassRows rows = classes.get(label);
+		return rows == null ? 0 : rows.seen;
+	}
+
+	public synchronized int size() {
+		int res = 0;
+		for (ClassRows rows : classes.values()) {
+			res += rows.count;
+		}
+		return res;
+	}
+
+	public synchronized long duplicates() {
+		return duplicates;
+	}
+
+	public synchronized long memoryBytes() {
+		long res = 0;
+		for (ClassRows rows : classes.values()) {
+			res += 4L * rows.data.length;
+		}
+		return res;
+	}
+
+	/* the current contents for MLClassifier.train; later adds do not change it */
+	public synchronized Map<String, List<DataInstance>> snapshot() {
+		Map<String, List<DataInstance>> res = new LinkedHashMap<>();
+		for (ClassRows rows : classes.values()) {
+			rows.shared = true;
+			res.put(rows.label, new Rows(rows.label, rows.data, bins, rows.count));
+		}
+		return res;
+	}
+
+	/* in the format of DataInstance.toCSVRow(), class by class */
+	public synchronized void writeCSV(Writer writer) throws IOException {
+		DataInstance data = new DataInstance();
+		data.measurements = new float[bins];
+		for (ClassRows rows : classes.values()) {
+			data.label = rows.label;
+			for (int r = 0; r < rows.count; r++) {
+				System.arraycopy(rows.data, r * bins, data.measurements, 0, bins);
+				writer.write(data.toCSVRow());
+			}
+		}
+	}
+
+	public synchronized void clear() {
+		for (ClassRows rows : classes.values()) {
+			rows.data = new float[0];
+			rows.count = 0;
+			rows.seen = 0;
+			rows.next = 0;
+			rows.last = null;
+		}
+		duplicates = 0;
+	}
+}
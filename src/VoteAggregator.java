@@ -0,0 +1,117 @@
+/* A debounced decision over the last few classified frames, in constant memory
+ *
+ * Each frame votes for a class index, with weight 1 or, when weighted, its confidence. The
+ * tallies of the window are kept up to date as frames enter and leave the ring, so a frame
+ * costs O(classes) whatever the window size. The decision has hysteresis: another class
+ * takes over only once it holds enter of the window's weight, and the current one falls
+ * back to the background class when its share drops below exit.
+ */
+
+public class VoteAggregator {
+
+	/* confidences are stored as fixed point, so the running tallies never drift */
+	static final int ONE = 1 << 10;
+
+	final int[] classes;
+	final int[] weights;
+	final long[] tally;
+	final int background;
+	long total;
+	int next;
+	int filled;
+
+	boolean weighted = false;
+	float enter = 0.6f;
+	float exit = 0.4f;
+	int decision;
+
+	/* background is the class decided when nothing else is clear, e.g. Neutral; -1 for none */
+	public VoteAggregator(int nclasses, int window, int background) {
+		this.classes = new int[window];
+		this.weights = new int[window];
+		this.tally = new long[nclasses];
+		this.background = background;
+		this.decision = background;
+	}
+
+	/* weigh each frame by the confidence passed to add(), instead of counting it once */
+	public void setWeighted(boolean weighted) {
+		this.weighted = weighted;
+	}
+
+	/* the window shares needed to take over the decision, and to keep it */
+	public void setHysteresis(float enter, float exit) {
+		this.enter = enter;
+		this.exit = exit;
+	}
+
+	/* add one frame's class index and confidence in [0, 1]; returns the decision, which is -1
+	 * whenever it falls back and there is no background class */
+	public int add(int classIndex, float confidence) {
+		int w = weighted ? Math.max(1, Math.round(confidence * ONE)) : ONE;
+
+		if (filled == classes.length) {
+			tally[classes[next]] -= weights[next];
+			total -= weights[next];
+		} else {
+			filled++;
+		}
+		classes[next] = classIndex;
+		weights[next] = w;
+		tally[classIndex] += w;
+		total += w;
+		next = next + 1 == classes.length ? 0 : next + 1;
+
+		int best = 0;
+		for (int c = 1; c < tally.length; c++) {
+			if (tally[c] > tally[best]) {
+				best = c;
+			}
+		}
+
+		if (best != decision && tally[best] >= enter * total) {
+			decision = best;
+		} else if (decision >= 0 && decision != background && tally[decision] < exit * total) {
+			decision = background;
+		}
+		return decision;
+	}
+
+	/* the current decision, or -1 before any frame if there is no background class */
+	public int decision() {
+		return decision;
+	}
+
+	/* the fraction of the window's weight held by classIndex */
+	public float share(int classIndex) {
+		return total == 0 ? 0 : (float) tally[classIndex] / total;
+	}
+
+	public void reset() {
+		for (int c = 0; c < tally.length; c++) {
+			tally[c] = 0;
+		}
+		total = 0;
+		next = 0;
+		filled = 0;
+		decision = background;
+	}
+
+	/* the most counted class other than background, background on a tie, or -1 with no such votes */
+	public static int mode(int[] counts, int background) {
+		int best = -1;
+		boolean tie = false;
+		for (int c = 0; c < counts.length; c++) {
+			if (c == background || counts[c] == 0) {
+				continue;
+			}
+			if (best < 0 || counts[c] > counts[best]) {
+				best = c;
+				tie = false;
+			} else if (counts[c] == counts[best]) {
+				tie = true;
+			}
+		}
+		return tie ? background : best;
+	}
+}
@@ -0,0 +1,28 @@
+/* Analysis windows applied to each block of samples before the FFT */
+
+public enum Window {
+
+	/* no window, the same as processing.sound.FFT */
+	RECTANGULAR,
+	HANN,
+	HAMMING;
+
+	/* the periodic form of the window, for overlapping frames */
+	public float[] coefficients(int size) {
+		float[] res = new float[size];
+		for (int i = 0; i < size; i++) {
+			double phase = 2 * Math.PI * i / size;
+			switch (this) {
+			case HANN:
+				res[i] = (float) (0.5 - 0.5 * Math.cos(phase));
+				break;
+			case HAMMING:
+				res[i] = (float) (0.54 - 0.46 * Math.cos(phase));
+				break;
+			default:
+				res[i] = 1;
+			}
+		}
+		return res;
+	}
+}